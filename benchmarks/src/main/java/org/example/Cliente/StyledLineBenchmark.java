@@ -0,0 +1,38 @@
+package org.example.Cliente;
+
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.awt.Color;
+import java.util.concurrent.TimeUnit;
+
+// Análisis de las líneas recibidas por ChatClientGUI.appendStyledMessage (sin tocar Swing):
+// separación color|nombre: mensaje y decodificación del color
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class StyledLineBenchmark {
+
+    @Param({
+            "#5a8fc3|ana: hola a todos, ¿cómo va todo?",
+            "Bienvenido al Chat. Por favor, ingresa tu nombre:"
+    })
+    public String line;
+
+    @Benchmark
+    public StyledLine parse() {
+        return StyledLine.parse(line);
+    }
+
+    @Benchmark
+    public void parseAndDecodeColor(Blackhole blackhole) {
+        StyledLine styled = StyledLine.parse(line);
+        if (styled.hasName()) {
+            blackhole.consume(Color.decode(styled.colorHex));
+        }
+        blackhole.consume(styled);
+    }
+}
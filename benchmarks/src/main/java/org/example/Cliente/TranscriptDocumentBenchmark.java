@@ -0,0 +1,53 @@
+package org.example.Cliente;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+// Volcado de un lote de líneas en la conversación (TranscriptDocument.append) con el documento
+// ya lleno, es decir, incluido el recorte de las líneas más antiguas. Se ejecuta sin ventana.
+// Al acabar comprueba que el documento conserva exactamente maxLines líneas, una por párrafo.
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Djava.awt.headless=true")
+public class TranscriptDocumentBenchmark {
+
+    @Param({"1", "50"})
+    public int linesPerBatch;
+
+    @Param({"5000"})
+    public int maxLines;
+
+    private TranscriptDocument document;
+    private final List<StyledLine> batch = new ArrayList<>();
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        document = new TranscriptDocument(maxLines);
+        for (int i = 0; i < linesPerBatch; i++) {
+            batch.add(StyledLine.parse(i % 2 == 0 ? "#5a8fc3|ana: hola a todos, ¿cómo va todo?" : "Carlos se ha unido al chat."));
+        }
+        for (int i = 0; i < maxLines; i += linesPerBatch) {
+            document.append(batch);
+        }
+        checkLineCount();
+    }
+
+    @Benchmark
+    public int appendBatch() {
+        document.append(batch);
+        return document.getLength();
+    }
+
+    @TearDown(Level.Trial)
+    public void checkLineCount() {
+        if (document.lineCount() != maxLines) {
+            throw new IllegalStateException("Se esperaban " + maxLines + " líneas y hay " + document.lineCount());
+        }
+    }
+}
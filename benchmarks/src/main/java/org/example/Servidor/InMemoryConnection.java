@@ -0,0 +1,60 @@
+package org.example.Servidor;
+
+import java.nio.ByteBuffer;
+
+// Conexión de cliente falsa para los benchmarks: usa la misma OutboundQueue que las conexiones
+// reales y "escribe" copiando las tramas a un buffer directo en memoria en lugar de a un socket
+class InMemoryConnection implements ClientConnection {
+
+    private static final int WRITE_BATCH = 16;
+
+    private final OutboundQueue outbound;
+    private final ByteBuffer[] batch = new ByteBuffer[WRITE_BATCH];
+    private final ByteBuffer socketBuffer = ByteBuffer.allocateDirect(64 * 1024);
+    ChatServerCore.ClientInfo info;
+    long bytesWritten = 0;
+
+    InMemoryConnection(ChatServerCore core) {
+        this.outbound = core.newOutboundQueue();
+    }
+
+    @Override
+    public void sendFrame(ByteBuffer frame, boolean required) {
+        outbound.offer(frame.duplicate(), required);
+    }
+
+    @Override
+    public ChatServerCore.ClientInfo info() {
+        return info;
+    }
+
+    @Override
+    public void setInfo(ChatServerCore.ClientInfo info) {
+        this.info = info;
+    }
+
+    @Override
+    public int pendingFrames() {
+        return outbound.size();
+    }
+
+    @Override
+    public void close() {
+        outbound.close();
+    }
+
+    // Vacía la cola como lo haría el escritor de la conexión
+    void drain() {
+        int count;
+        while ((count = outbound.drainTo(batch)) > 0) {
+            for (int i = 0; i < count; i++) {
+                if (socketBuffer.remaining() < batch[i].remaining()) {
+                    socketBuffer.clear();
+                }
+                bytesWritten += batch[i].remaining();
+                socketBuffer.put(batch[i]);
+                batch[i] = null;
+            }
+        }
+    }
+}
@@ -0,0 +1,70 @@
+package org.example.Servidor;
+
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+// Encuadre de líneas entrantes: LineDecoder (modo NIO), LineReader (modo bloqueante) y el
+// BufferedReader original como referencia, sobre el mismo flujo de mensajes en memoria
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class LineFramingBenchmark {
+
+    @Param({"1000"})
+    public int lines;
+
+    @Param({"32", "512"})
+    public int lineLength;
+
+    private byte[] input;
+
+    @Setup
+    public void setUp() {
+        StringBuilder text = new StringBuilder();
+        String filler = "mensaje de chat ñandú ".repeat(lineLength / 20 + 1).substring(0, lineLength);
+        for (int i = 0; i < lines; i++) {
+            text.append(filler).append(i % 2 == 0 ? "\n" : "\r\n");
+        }
+        input = text.toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    @Benchmark
+    public void lineDecoder(Blackhole blackhole) {
+        ByteBuffer buffer = ByteBuffer.wrap(input);
+        LineDecoder decoder = new LineDecoder();
+        String line;
+        while ((line = decoder.next(buffer)) != null) {
+            blackhole.consume(line);
+        }
+    }
+
+    @Benchmark
+    public void lineReader(Blackhole blackhole) throws IOException {
+        LineReader reader = new LineReader(Channels.newChannel(new ByteArrayInputStream(input)));
+        String line;
+        while ((line = reader.readLine()) != null) {
+            blackhole.consume(line);
+        }
+    }
+
+    @Benchmark
+    public void bufferedReaderBaseline(Blackhole blackhole) throws IOException {
+        BufferedReader reader = new BufferedReader(new InputStreamReader(new ByteArrayInputStream(input), StandardCharsets.UTF_8));
+        String line;
+        while ((line = reader.readLine()) != null) {
+            blackhole.consume(line);
+        }
+    }
+}
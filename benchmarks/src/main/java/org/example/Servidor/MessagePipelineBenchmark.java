@@ -0,0 +1,53 @@
+package org.example.Servidor;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+// Una línea de chat normal por el pipeline de mensajes con 0, 1 o 5 etapas añadidas entre los
+// comandos y el envío a la sala. La sala solo tiene al remitente, para que el fan-out pese poco.
+// Ejecutar con -prof gc: la asignación por operación no debe crecer con el número de etapas.
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class MessagePipelineBenchmark {
+
+    private static final String MESSAGE = "Hola a todos, ¿qué tal va el día? Esto es un mensaje de prueba.";
+
+    @Param({"0", "1", "5"})
+    public int stages;
+
+    private ChatServerCore core;
+    private InMemoryConnection connection;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        ServerConfig config = new ServerConfig();
+        config.setOutboundQueueCapacity(64);
+        config.setLogMessages(false);
+        core = new ChatServerCore(line -> { }, config);
+        for (int i = 0; i < stages; i++) {
+            int maxLength = 1000 + i;
+            core.addStage(message -> message.text.length() <= maxLength); // Filtro típico: no crea objetos
+        }
+        connection = new InMemoryConnection(core);
+        connection.info = core.registerClient(connection, "bench");
+        connection.drain();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        core.unregisterClient(connection, connection.info);
+        connection.close();
+    }
+
+    @Benchmark
+    public boolean chatLine() {
+        boolean open = core.handleClientLine(connection, connection.info, MESSAGE);
+        connection.drain();
+        return open;
+    }
+}
@@ -0,0 +1,36 @@
+package org.example.Servidor;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+// getRandomHexColor crea un Random nuevo por llamada; threadLocalRandom sirve de referencia
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class RandomColorBenchmark {
+
+    @Benchmark
+    public String getRandomHexColor() {
+        return ChatServerCore.getRandomHexColor();
+    }
+
+    @Benchmark
+    @Threads(4)
+    public String getRandomHexColorContended() {
+        return ChatServerCore.getRandomHexColor();
+    }
+
+    @Benchmark
+    public String threadLocalRandom() {
+        ThreadLocalRandom rand = ThreadLocalRandom.current();
+        int r = rand.nextInt(151) + 50;
+        int g = rand.nextInt(151) + 50;
+        int b = rand.nextInt(151) + 50;
+        return String.format("#%02x%02x%02x", r, g, b);
+    }
+}
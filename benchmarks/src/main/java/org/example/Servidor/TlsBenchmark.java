@@ -0,0 +1,163 @@
+package org.example.Servidor;
+
+import org.openjdk.jmh.annotations.*;
+
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.SSLEngine;
+import javax.net.ssl.SSLEngineResult;
+import javax.net.ssl.SSLException;
+import javax.net.ssl.TrustManagerFactory;
+import java.io.File;
+import java.nio.ByteBuffer;
+import java.security.KeyStore;
+import java.util.concurrent.TimeUnit;
+
+// Coste de TLS frente a texto plano, con un par de SSLEngine en memoria (sin sockets):
+//   handshakeFull / handshakeResumed  handshake completo y reanudado con un ticket de sesión
+//   tlsWrite / plaintextWrite        un lote de tramas de chat cifrado y descifrado, o solo copiado
+// Necesita el almacén de claves del servidor (ver TlsContext para crearlo con keytool):
+//   java -Dchat.bench.keyStore=chat.p12 -Dchat.bench.keyStorePassword=cambiame -jar benchmarks.jar Tls
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = {"-Dchat.bench.keyStore=chat.p12", "-Dchat.bench.keyStorePassword=cambiame"})
+public class TlsBenchmark {
+
+    private static final String MESSAGE = "#3a7bd5|bench: Hola a todos, ¿qué tal va el día? Esto es un mensaje de prueba.";
+    private static final ByteBuffer[] NO_DATA = {ByteBuffer.allocate(0)};
+    private static final int MAX_HANDSHAKE_STEPS = 100;
+
+    @Param({"1", "16"})
+    public int framesPerWrite;
+
+    private TlsContext server;
+    private SSLContext client;
+    private int nextPeerPort = 1; // Un "puerto" distinto en cada handshake completo: el cliente no tiene sesión que reanudar
+    private SSLEngine serverEngine;
+    private SSLEngine clientEngine;
+    private ByteBuffer[] frames;
+    private ByteBuffer network;
+    private ByteBuffer received;
+    private ByteBuffer plaintext;
+    private ByteBuffer scratch;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        ServerConfig config = new ServerConfig();
+        config.setTlsKeyStore(System.getProperty("chat.bench.keyStore"));
+        config.setTlsKeyStorePassword(System.getProperty("chat.bench.keyStorePassword"));
+        server = TlsContext.load(config);
+
+        char[] password = config.getTlsKeyStorePassword().toCharArray();
+        KeyStore trusted = KeyStore.getInstance(new File(config.getTlsKeyStore()), password); // Confía en su propio certificado
+        TrustManagerFactory trustManagers = TrustManagerFactory.getInstance(TrustManagerFactory.getDefaultAlgorithm());
+        trustManagers.init(trusted);
+        client = SSLContext.getInstance("TLS");
+        client.init(null, trustManagers.getTrustManagers(), null);
+
+        int packetSize = server.newEngine().getSession().getPacketBufferSize();
+        scratch = ByteBuffer.allocate(packetSize);
+        handshake(newClientEngine(0)); // Deja un ticket para handshakeResumed
+        clientEngine = newClientEngine(0);
+        serverEngine = handshake(clientEngine);
+
+        frames = new ByteBuffer[framesPerWrite];
+        for (int i = 0; i < framesPerWrite; i++) {
+            frames[i] = Frames.line(MESSAGE);
+        }
+        network = ByteBuffer.allocate(packetSize * 2);
+        received = ByteBuffer.allocate(packetSize * 2);
+        plaintext = ByteBuffer.allocate(packetSize * 2);
+    }
+
+    @Benchmark
+    public SSLEngine handshakeFull() throws SSLException {
+        return handshake(newClientEngine(nextPeerPort++));
+    }
+
+    @Benchmark
+    public SSLEngine handshakeResumed() throws SSLException {
+        return handshake(newClientEngine(0));
+    }
+
+    // Lo que hace TlsChannel con un lote de la cola de salida, más el descifrado del cliente
+    @Benchmark
+    public int tlsWrite() throws SSLException {
+        rewindFrames();
+        network.clear();
+        while (frames[framesPerWrite - 1].hasRemaining()) {
+            serverEngine.wrap(frames, network);
+        }
+        network.flip();
+        received.clear();
+        while (network.hasRemaining()) {
+            clientEngine.unwrap(network, received);
+        }
+        return received.position();
+    }
+
+    @Benchmark
+    public int plaintextWrite() {
+        rewindFrames();
+        plaintext.clear();
+        for (ByteBuffer frame : frames) {
+            plaintext.put(frame);
+        }
+        return plaintext.position();
+    }
+
+    private void rewindFrames() {
+        for (ByteBuffer frame : frames) {
+            frame.rewind();
+        }
+    }
+
+    private SSLEngine newClientEngine(int peerPort) {
+        SSLEngine engine = client.createSSLEngine("localhost", peerPort);
+        engine.setUseClientMode(true);
+        return engine;
+    }
+
+    // Handshake entre clientEngine y un motor de servidor nuevo; devuelve el del servidor.
+    // Sigue hasta que el cliente ha leído también el ticket de sesión que el servidor envía al final
+    private SSLEngine handshake(SSLEngine clientEngine) throws SSLException {
+        SSLEngine serverEngine = server.newEngine();
+        int packetSize = serverEngine.getSession().getPacketBufferSize();
+        ByteBuffer toServer = ByteBuffer.allocate(packetSize);
+        ByteBuffer toClient = ByteBuffer.allocate(packetSize);
+        clientEngine.beginHandshake();
+        serverEngine.beginHandshake();
+        for (int step = 0; step < MAX_HANDSHAKE_STEPS; step++) {
+            if (!isHandshaking(clientEngine) && !isHandshaking(serverEngine)
+                    && toServer.position() == 0 && toClient.position() == 0) {
+                return serverEngine;
+            }
+            step(clientEngine, toClient, toServer);
+            step(serverEngine, toServer, toClient);
+        }
+        throw new SSLException("El handshake no terminó");
+    }
+
+    private void step(SSLEngine engine, ByteBuffer in, ByteBuffer out) throws SSLException {
+        SSLEngineResult.HandshakeStatus status = engine.getHandshakeStatus();
+        if (status == SSLEngineResult.HandshakeStatus.NEED_TASK) {
+            Runnable task;
+            while ((task = engine.getDelegatedTask()) != null) {
+                task.run();
+            }
+        } else if (status == SSLEngineResult.HandshakeStatus.NEED_WRAP) {
+            engine.wrap(NO_DATA, out);
+        } else if (in.position() > 0) {
+            in.flip();
+            engine.unwrap(in, scratch);
+            in.compact();
+            scratch.clear();
+        }
+    }
+
+    private static boolean isHandshaking(SSLEngine engine) {
+        return engine.getHandshakeStatus() != SSLEngineResult.HandshakeStatus.NOT_HANDSHAKING;
+    }
+}
@@ -0,0 +1,666 @@
+package org.example.Carga;
+
+import org.example.Servidor.ChatServerCore;
+import org.example.Servidor.LatencyHistogram;
+import org.example.Servidor.LogDrainer;
+import org.example.Servidor.LogRingBuffer;
+import org.example.Servidor.ServerConfig;
+import org.example.Servidor.ServerMetrics;
+
+import java.io.IOException;
+import java.io.PrintStream;
+import java.io.Writer;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+// Generador de carga de extremo a extremo para el protocolo del chat.
+//
+// Abre N clientes simulados (sockets no bloqueantes repartidos entre unos pocos hilos), completa
+// el saludo "Bienvenido... ingresa tu nombre", envía mensajes con marca de tiempo a un ritmo
+// fijo y mide la latencia desde el envío hasta la entrega en cada destinatario, además del tiempo
+// hasta que el último destinatario recibe cada mensaje. El resultado se imprime en JSON.
+//
+// Escenarios (--scenario):
+//   steady  medición única tras un calentamiento
+//   soak    ejecución larga con una línea JSON por intervalo (--interval) y resumen final
+//   storm   conexiones simultáneas: todos los clientes conectan a la vez, --storms veces
+//
+// Uso: java -cp SocketChat.jar org.example.Carga.ChatLoadGenerator --clients=1000 --rate=2000
+//          [--scenario=steady|soak|storm] [--senders=N] [--seconds=30] [--warmup=5] [--interval=10]
+//          [--storms=3] [--connectTimeout=30] [--loops=N] [--host=H --port=P | --server.mode=nio --server.executor=virtual ...]
+//          [--out=resultado.json]
+//
+// Sin --host se arranca un ChatServerCore embebido; las opciones --server.* se le pasan tal cual.
+public class ChatLoadGenerator {
+
+    private static final String MARKER = ": LT "; // Cuerpo de los mensajes: "LT <secuencia> <nanoTime>"
+    private static final byte[] MARKER_BYTES = MARKER.getBytes(StandardCharsets.UTF_8);
+    private static final int CONNECTIONS_PER_SOURCE_ADDRESS = 20000;
+    private static final int MAX_BURST = 1000;
+
+    enum Scenario { STEADY, SOAK, STORM }
+
+    private final Scenario scenario;
+    private final int clientCount;
+    private final int senderCount;
+    private final double rate; // Mensajes por segundo en total
+    private final int seconds;
+    private final int warmupSeconds;
+    private final int intervalSeconds;
+    private final int storms;
+    private final int connectTimeoutSeconds;
+    private final String host;
+    private final int port;
+    private final ClientLoop[] loops;
+
+    private final AtomicLong messageSequence = new AtomicLong();
+    private final ConcurrentHashMap<Long, AtomicInteger> pendingFanout = new ConcurrentHashMap<>();
+    private final LatencyHistogram fanoutCompletion = new LatencyHistogram();
+    private final AtomicInteger readyClients = new AtomicInteger();
+    private final LongAdder failedClients = new LongAdder();
+    private final LongAdder disconnectedClients = new LongAdder();
+    private volatile boolean sending = false;
+    private volatile long sendStartNanos;
+
+    ChatLoadGenerator(Map<String, String> options) throws IOException {
+        scenario = Scenario.valueOf(options.getOrDefault("scenario", "steady").toUpperCase(Locale.ROOT));
+        clientCount = Integer.parseInt(options.getOrDefault("clients", "100"));
+        senderCount = Math.min(clientCount, Integer.parseInt(options.getOrDefault("senders", String.valueOf(clientCount))));
+        rate = Double.parseDouble(options.getOrDefault("rate", "1000"));
+        seconds = Integer.parseInt(options.getOrDefault("seconds", scenario == Scenario.SOAK ? "600" : "30"));
+        warmupSeconds = Integer.parseInt(options.getOrDefault("warmup", "5"));
+        intervalSeconds = Integer.parseInt(options.getOrDefault("interval", "10"));
+        storms = Integer.parseInt(options.getOrDefault("storms", "3"));
+        connectTimeoutSeconds = Integer.parseInt(options.getOrDefault("connectTimeout", "30"));
+        host = options.getOrDefault("host", "127.0.0.1");
+        port = Integer.parseInt(options.getOrDefault("port", "12345"));
+        int loopCount = Integer.parseInt(options.getOrDefault("loops",
+                String.valueOf(Math.max(1, Runtime.getRuntime().availableProcessors() / 2))));
+        loops = new ClientLoop[Math.max(1, loopCount)];
+        for (int i = 0; i < loops.length; i++) {
+            loops[i] = new ClientLoop();
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        Map<String, String> options = parseArgs(args);
+
+        ChatServerCore core = null;
+        LogDrainer logDrainer = null;
+        if (!options.containsKey("host")) {
+            ServerConfig config = ServerConfig.fromSystemProperties();
+            config.setPort(Integer.parseInt(options.getOrDefault("port", "12345")));
+            config.setClientRateLimit(0); // Cada emisor simulado supera el límite por defecto; --server.clientRateLimit lo activa
+            for (Map.Entry<String, String> option : options.entrySet()) {
+                if (option.getKey().startsWith("server.")) {
+                    config.set(option.getKey().substring("server.".length()), option.getValue());
+                }
+            }
+            // El servidor embebido registra sus logs como siempre, pero se descartan
+            LogRingBuffer logBuffer = new LogRingBuffer(16384);
+            logDrainer = new LogDrainer(logBuffer, Writer.nullWriter());
+            logDrainer.start();
+            core = new ChatServerCore(logBuffer, config);
+            new Thread(core, "chat-server").start();
+            Thread.sleep(500);
+        }
+
+        ChatLoadGenerator generator = new ChatLoadGenerator(options);
+        PrintStream out = options.containsKey("out")
+                ? new PrintStream(Files.newOutputStream(Path.of(options.get("out"))), true, StandardCharsets.UTF_8)
+                : new PrintStream(System.out, true, StandardCharsets.UTF_8);
+        try {
+            generator.run(out);
+            if (core != null) {
+                out.println(serverJson(core.getMetrics()));
+            }
+        } finally {
+            if (core != null) {
+                core.stopServer();
+                logDrainer.stop();
+            }
+            out.flush();
+        }
+        System.exit(0);
+    }
+
+    void run(PrintStream out) throws Exception {
+        for (int i = 0; i < loops.length; i++) {
+            Thread thread = new Thread(loops[i], "load-" + i);
+            thread.setDaemon(true);
+            thread.start();
+        }
+        if (scenario == Scenario.STORM) {
+            runStorms(out);
+        } else {
+            runTraffic(out);
+        }
+    }
+
+    // Conecta a todos los clientes a la vez y mide conexiones por segundo y latencia del saludo
+    private void runStorms(PrintStream out) throws Exception {
+        List<String> rounds = new ArrayList<>();
+        for (int round = 1; round <= storms; round++) {
+            LatencyHistogram handshakes = new LatencyHistogram();
+            for (ClientLoop loop : loops) {
+                loop.handshakes.reset();
+            }
+            long start = System.nanoTime();
+            int ready = connectAll(false);
+            double elapsed = (System.nanoTime() - start) / 1e9;
+            long failed = failedClients.sumThenReset();
+            for (ClientLoop loop : loops) {
+                handshakes.add(loop.handshakes);
+            }
+            rounds.add("{\"round\":" + round
+                    + ",\"ready\":" + ready
+                    + ",\"failed\":" + failed
+                    + ",\"timed_out\":" + (clientCount - ready - failed)
+                    + ",\"seconds\":" + format(elapsed)
+                    + ",\"connections_per_s\":" + format(ready / elapsed)
+                    + ",\"handshake\":" + histogramJson(handshakes) + "}");
+            closeAll();
+            Thread.sleep(1000); // Dejar que el servidor procese las desconexiones
+        }
+        out.println("{\"scenario\":\"storm\",\"clients\":" + clientCount + ",\"rounds\":[" + String.join(",", rounds) + "]}");
+    }
+
+    private void runTraffic(PrintStream out) throws Exception {
+        long connectStart = System.nanoTime();
+        int ready = connectAll(true);
+        double connectSeconds = (System.nanoTime() - connectStart) / 1e9;
+        LatencyHistogram handshakes = new LatencyHistogram();
+        for (ClientLoop loop : loops) {
+            handshakes.add(loop.handshakes);
+        }
+
+        sendStartNanos = System.nanoTime();
+        sending = true;
+        Thread.sleep(warmupSeconds * 1000L);
+        resetTrafficStats();
+
+        long measureStart = System.nanoTime();
+        long lastReport = measureStart;
+        LatencyHistogram totalDelivery = new LatencyHistogram();
+        LatencyHistogram totalCompletion = new LatencyHistogram();
+        long totalSent = 0;
+        long totalDelivered = 0;
+        int interval = 0;
+        long end = measureStart + seconds * 1_000_000_000L;
+        while (System.nanoTime() < end) {
+            long wait = scenario == Scenario.SOAK
+                    ? Math.min(end, lastReport + intervalSeconds * 1_000_000_000L) - System.nanoTime()
+                    : end - System.nanoTime();
+            Thread.sleep(Math.max(1, wait / 1_000_000));
+            if (scenario == Scenario.SOAK || System.nanoTime() >= end) {
+                long now = System.nanoTime();
+                Snapshot snapshot = takeSnapshot();
+                totalDelivery.add(snapshot.delivery);
+                totalCompletion.add(snapshot.completion);
+                totalSent += snapshot.sent;
+                totalDelivered += snapshot.delivered;
+                if (scenario == Scenario.SOAK) {
+                    out.println(intervalJson(++interval, (now - lastReport) / 1e9, snapshot));
+                }
+                lastReport = now;
+            }
+        }
+        sending = false;
+        double measuredSeconds = (System.nanoTime() - measureStart) / 1e9;
+        Thread.sleep(1000); // Entregas en vuelo
+        Snapshot tail = takeSnapshot();
+        totalDelivery.add(tail.delivery);
+        totalCompletion.add(tail.completion);
+        totalDelivered += tail.delivered;
+
+        out.println("{\"scenario\":\"" + scenario.name().toLowerCase(Locale.ROOT) + "\""
+                + ",\"clients\":" + clientCount
+                + ",\"ready\":" + ready
+                + ",\"failed\":" + failedClients.sum()
+                + ",\"timed_out\":" + (clientCount - ready - failedClients.sum())
+                + ",\"disconnected\":" + disconnectedClients.sum()
+                + ",\"senders\":" + senderCount
+                + ",\"target_rate\":" + format(rate)
+                + ",\"connect_seconds\":" + format(connectSeconds)
+                + ",\"handshake\":" + histogramJson(handshakes)
+                + ",\"seconds\":" + format(measuredSeconds)
+                + ",\"sent\":" + totalSent
+                + ",\"delivered\":" + totalDelivered
+                + ",\"sent_per_s\":" + format(totalSent / measuredSeconds)
+                + ",\"delivered_per_s\":" + format(totalDelivered / measuredSeconds)
+                + ",\"incomplete_fanouts\":" + pendingFanout.size()
+                + ",\"delivery_latency\":" + histogramJson(totalDelivery)
+                + ",\"fanout_completion\":" + histogramJson(totalCompletion) + "}");
+        closeAll();
+    }
+
+    // Inicia las conexiones de todos los clientes y espera a que completen el saludo. Con un backlog
+    // pequeño algunas conexiones pueden quedarse esperando reintentos de SYN; esas cuentan como timed_out
+    private int connectAll(boolean assignSenders) throws InterruptedException {
+        readyClients.set(0);
+        for (int i = 0; i < clientCount; i++) {
+            boolean sender = assignSenders && i < senderCount;
+            loops[i % loops.length].connect(new SimClient(i, "carga-" + i, sender));
+        }
+        long deadline = System.nanoTime() + connectTimeoutSeconds * 1_000_000_000L;
+        while (readyClients.get() + failedClients.sum() < clientCount && System.nanoTime() < deadline) {
+            Thread.sleep(5);
+        }
+        return readyClients.get();
+    }
+
+    private void closeAll() throws InterruptedException {
+        for (ClientLoop loop : loops) {
+            loop.requestCloseAll();
+        }
+        for (ClientLoop loop : loops) {
+            loop.awaitClosed();
+        }
+    }
+
+    private void resetTrafficStats() {
+        takeSnapshot();
+        pendingFanout.clear();
+    }
+
+    private static class Snapshot {
+        final LatencyHistogram delivery = new LatencyHistogram();
+        final LatencyHistogram completion = new LatencyHistogram();
+        long sent;
+        long delivered;
+    }
+
+    // Recoge y reinicia los contadores de todos los hilos (los valores en curso son aproximados)
+    private Snapshot takeSnapshot() {
+        Snapshot snapshot = new Snapshot();
+        for (ClientLoop loop : loops) {
+            snapshot.delivery.add(loop.deliveries);
+            loop.deliveries.reset();
+            snapshot.sent += loop.sent.sumThenReset();
+            snapshot.delivered += loop.delivered.sumThenReset();
+        }
+        snapshot.completion.add(fanoutCompletion);
+        fanoutCompletion.reset();
+        return snapshot;
+    }
+
+    private String intervalJson(int interval, double intervalSeconds, Snapshot snapshot) {
+        return "{\"interval\":" + interval
+                + ",\"seconds\":" + format(intervalSeconds)
+                + ",\"ready\":" + readyClients.get()
+                + ",\"sent_per_s\":" + format(snapshot.sent / intervalSeconds)
+                + ",\"delivered_per_s\":" + format(snapshot.delivered / intervalSeconds)
+                + ",\"delivery_latency\":" + histogramJson(snapshot.delivery)
+                + ",\"fanout_completion\":" + histogramJson(snapshot.completion) + "}";
+    }
+
+    // Contadores del servidor embebido: cuántas tramas salen por cada llamada a write()
+    private static String serverJson(ServerMetrics metrics) {
+        long frames = metrics.getMessagesOut();
+        long writes = metrics.getSocketWrites();
+        return "{\"server\":{\"accepted\":" + metrics.getAcceptedConnections()
+                + ",\"handshake_timeouts\":" + metrics.getHandshakeTimeouts()
+                + ",\"frames_out\":" + frames
+                + ",\"socket_writes\":" + writes
+                + ",\"frames_per_write\":" + format(writes > 0 ? (double) frames / writes : 0)
+                + ",\"bytes_out\":" + metrics.getBytesOut() + "}}";
+    }
+
+    // Percentiles en microsegundos
+    private static String histogramJson(LatencyHistogram histogram) {
+        return "{\"count\":" + histogram.getCount()
+                + ",\"mean_us\":" + format(histogram.getMean() / 1000.0)
+                + ",\"p50_us\":" + format(histogram.valueAtPercentile(50) / 1000.0)
+                + ",\"p90_us\":" + format(histogram.valueAtPercentile(90) / 1000.0)
+                + ",\"p99_us\":" + format(histogram.valueAtPercentile(99) / 1000.0)
+                + ",\"p999_us\":" + format(histogram.valueAtPercentile(99.9) / 1000.0)
+                + ",\"max_us\":" + format(histogram.getMax() / 1000.0) + "}";
+    }
+
+    private static String format(double value) {
+        return String.format(Locale.ROOT, "%.1f", value);
+    }
+
+    // Hilo que atiende a un subconjunto de clientes con un Selector y envía los mensajes
+    // de sus emisores a la parte proporcional del ritmo total
+    private class ClientLoop implements Runnable {
+        private final Selector selector;
+        private final Queue<SimClient> pendingConnects = new ConcurrentLinkedQueue<>();
+        private final List<SimClient> clients = new ArrayList<>();
+        private final List<SimClient> senders = new ArrayList<>();
+        private final ByteBuffer readBuffer = ByteBuffer.allocateDirect(64 * 1024);
+        private final LatencyHistogram deliveries = new LatencyHistogram();
+        private final LatencyHistogram handshakes = new LatencyHistogram();
+        private final LongAdder sent = new LongAdder();
+        private final LongAdder delivered = new LongAdder();
+        private volatile boolean closeRequested = false;
+        private volatile boolean closed = false;
+        private long sentByLoop = 0;
+        private long loopSendStart = -1;
+        private int nextSender = 0;
+
+        ClientLoop() throws IOException {
+            selector = Selector.open();
+        }
+
+        void connect(SimClient client) {
+            pendingConnects.add(client);
+            selector.wakeup();
+        }
+
+        void requestCloseAll() {
+            closed = false;
+            closeRequested = true;
+            selector.wakeup();
+        }
+
+        void awaitClosed() throws InterruptedException {
+            while (!closed) {
+                Thread.sleep(5);
+            }
+        }
+
+        @Override
+        public void run() {
+            while (true) {
+                try {
+                    selector.select(1);
+                    startPendingConnects();
+                    if (closeRequested) {
+                        closeClients();
+                    }
+                    Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+                    while (keys.hasNext()) {
+                        SelectionKey key = keys.next();
+                        keys.remove();
+                        if (!key.isValid()) {
+                            continue; // Cerrado por closeClients() después de select()
+                        }
+                        SimClient client = (SimClient) key.attachment();
+                        try {
+                            if (key.isConnectable()) {
+                                client.channel.finishConnect();
+                                key.interestOps(SelectionKey.OP_READ);
+                            } else if (key.isReadable()) {
+                                read(client);
+                            } else if (key.isWritable()) {
+                                client.flush(key);
+                            }
+                        } catch (IOException e) {
+                            dropClient(client, key);
+                        }
+                    }
+                    sendDueMessages();
+                } catch (IOException e) {
+                    System.err.println("Error en el bucle de carga: " + e.getMessage());
+                }
+            }
+        }
+
+        private void startPendingConnects() {
+            SimClient client;
+            while ((client = pendingConnects.poll()) != null) {
+                try {
+                    client.connectStartNanos = System.nanoTime();
+                    SocketChannel channel = SocketChannel.open();
+                    channel.configureBlocking(false);
+                    if (isLoopback()) {
+                        channel.bind(new InetSocketAddress("127.0.0." + (1 + client.id / CONNECTIONS_PER_SOURCE_ADDRESS), 0));
+                    }
+                    client.channel = channel;
+                    SelectionKey key;
+                    if (channel.connect(new InetSocketAddress(host, port))) {
+                        key = channel.register(selector, SelectionKey.OP_READ, client);
+                    } else {
+                        key = channel.register(selector, SelectionKey.OP_CONNECT, client);
+                    }
+                    client.key = key;
+                    clients.add(client);
+                    if (client.sender) {
+                        senders.add(client);
+                    }
+                } catch (IOException e) {
+                    failedClients.increment();
+                }
+            }
+        }
+
+        private boolean isLoopback() {
+            return host.equals("127.0.0.1") || host.equals("localhost");
+        }
+
+        private void read(SimClient client) throws IOException {
+            readBuffer.clear();
+            int read = client.channel.read(readBuffer);
+            if (read < 0) {
+                throw new IOException("Conexión cerrada por el servidor");
+            }
+            readBuffer.flip();
+            while (readBuffer.hasRemaining()) {
+                byte b = readBuffer.get();
+                if (b == '\n') {
+                    onLine(client);
+                    client.lineLength = 0;
+                } else {
+                    client.append(b);
+                }
+            }
+        }
+
+        private void onLine(SimClient client) throws IOException {
+            if (client.state == SimClient.READY) {
+                int marker = client.indexOf(MARKER_BYTES);
+                if (marker >= 0) {
+                    onDelivery(client, marker + MARKER_BYTES.length);
+                }
+                return;
+            }
+            String line = new String(client.line, 0, client.lineLength, StandardCharsets.UTF_8);
+            if (client.state == SimClient.AWAIT_PROMPT && line.startsWith("Bienvenido al Chat")) {
+                client.state = SimClient.AWAIT_WELCOME;
+                client.write(client.name + "\n", client.key);
+            } else if (client.state == SimClient.AWAIT_WELCOME && line.startsWith("¡Bienvenido, ")) {
+                client.state = SimClient.READY;
+                handshakes.record(System.nanoTime() - client.connectStartNanos);
+                readyClients.incrementAndGet();
+            } else if (line.startsWith("Servidor lleno")) {
+                throw new IOException(line);
+            }
+        }
+
+        // Línea "color|nombre: LT <secuencia> <nanoTime>"
+        private void onDelivery(SimClient client, int offset) {
+            long now = System.nanoTime();
+            int position = offset;
+            long sequence = 0;
+            while (position < client.lineLength && client.line[position] != ' ') {
+                sequence = sequence * 10 + (client.line[position++] - '0');
+            }
+            position++;
+            long sentAt = 0;
+            boolean negative = position < client.lineLength && client.line[position] == '-';
+            if (negative) {
+                position++;
+            }
+            while (position < client.lineLength) {
+                sentAt = sentAt * 10 + (client.line[position++] - '0');
+            }
+            if (negative) {
+                sentAt = -sentAt;
+            }
+            long latency = now - sentAt;
+            deliveries.record(latency);
+            delivered.increment();
+
+            AtomicInteger remaining = pendingFanout.get(sequence);
+            if (remaining != null && remaining.decrementAndGet() == 0) {
+                pendingFanout.remove(sequence);
+                fanoutCompletion.record(latency); // La última entrega cierra el fan-out
+            }
+        }
+
+        private void sendDueMessages() throws IOException {
+            if (!sending || senders.isEmpty()) {
+                loopSendStart = -1;
+                return;
+            }
+            long now = System.nanoTime();
+            if (loopSendStart < 0) {
+                loopSendStart = now;
+                sentByLoop = 0;
+            }
+            double loopRate = rate * senders.size() / senderCount;
+            long due = (long) ((now - loopSendStart) / 1e9 * loopRate) - sentByLoop;
+            due = Math.min(due, MAX_BURST);
+            for (int i = 0; i < due; i++) {
+                SimClient client = senders.get(nextSender);
+                nextSender = (nextSender + 1) % senders.size();
+                sentByLoop++;
+                if (client.state != SimClient.READY || client.hasPendingWrite()) {
+                    continue; // Contrapresión: el socket del emisor no admite más datos
+                }
+                long sequence = messageSequence.incrementAndGet();
+                int expected = readyClients.get();
+                pendingFanout.put(sequence, new AtomicInteger(expected));
+                client.write("LT " + sequence + " " + System.nanoTime() + "\n", client.key);
+                sent.increment();
+            }
+        }
+
+        private void dropClient(SimClient client, SelectionKey key) {
+            key.cancel();
+            try {
+                client.channel.close();
+            } catch (IOException ignored) {
+                // Ignorar errores al cerrar
+            }
+            if (client.state == SimClient.READY) {
+                readyClients.decrementAndGet();
+                disconnectedClients.increment();
+            } else {
+                failedClients.increment();
+            }
+            client.state = SimClient.CLOSED;
+        }
+
+        private void closeClients() {
+            for (SimClient client : clients) {
+                if (client.key != null) {
+                    client.key.cancel();
+                }
+                try {
+                    if (client.channel != null) {
+                        client.channel.close();
+                    }
+                } catch (IOException ignored) {
+                    // Ignorar errores al cerrar
+                }
+            }
+            clients.clear();
+            senders.clear();
+            closeRequested = false;
+            closed = true;
+        }
+    }
+
+    // Estado de un cliente simulado; solo lo toca su ClientLoop
+    private static class SimClient {
+        static final int AWAIT_PROMPT = 0;
+        static final int AWAIT_WELCOME = 1;
+        static final int READY = 2;
+        static final int CLOSED = 3;
+
+        final int id;
+        final String name;
+        final boolean sender;
+        SocketChannel channel;
+        SelectionKey key;
+        int state = AWAIT_PROMPT;
+        long connectStartNanos;
+        byte[] line = new byte[256];
+        int lineLength = 0;
+        ByteBuffer pendingWrite;
+
+        SimClient(int id, String name, boolean sender) {
+            this.id = id;
+            this.name = name;
+            this.sender = sender;
+        }
+
+        void append(byte b) {
+            if (lineLength == line.length) {
+                byte[] grown = new byte[line.length * 2];
+                System.arraycopy(line, 0, grown, 0, lineLength);
+                line = grown;
+            }
+            line[lineLength++] = b;
+        }
+
+        int indexOf(byte[] pattern) {
+            outer:
+            for (int i = 0; i <= lineLength - pattern.length; i++) {
+                for (int j = 0; j < pattern.length; j++) {
+                    if (line[i + j] != pattern[j]) {
+                        continue outer;
+                    }
+                }
+                return i;
+            }
+            return -1;
+        }
+
+        boolean hasPendingWrite() {
+            return pendingWrite != null;
+        }
+
+        void write(String text, SelectionKey key) throws IOException {
+            ByteBuffer buffer = ByteBuffer.wrap(text.getBytes(StandardCharsets.UTF_8));
+            channel.write(buffer);
+            if (buffer.hasRemaining()) {
+                pendingWrite = buffer;
+                key.interestOps(key.interestOps() | SelectionKey.OP_WRITE);
+            }
+        }
+
+        void flush(SelectionKey key) throws IOException {
+            channel.write(pendingWrite);
+            if (!pendingWrite.hasRemaining()) {
+                pendingWrite = null;
+                key.interestOps(SelectionKey.OP_READ);
+            }
+        }
+    }
+
+    private static Map<String, String> parseArgs(String[] args) {
+        Map<String, String> options = new HashMap<>();
+        for (String arg : args) {
+            if (arg.startsWith("--")) {
+                int eq = arg.indexOf('=');
+                if (eq > 0) {
+                    options.put(arg.substring(2, eq), arg.substring(eq + 1));
+                } else {
+                    options.put(arg.substring(2), "true");
+                }
+            }
+        }
+        return options;
+    }
+}
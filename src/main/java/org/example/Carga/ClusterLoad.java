@@ -0,0 +1,156 @@
+package org.example.Carga;
+
+import org.example.Servidor.ChatServerCore;
+import org.example.Servidor.ServerConfig;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.net.Socket;
+import java.net.SocketTimeoutException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+// Prueba de clúster: arranca varios ChatServerCore enlazados entre sí en este proceso (alternando
+// los modos NIO y BLOCKING), conecta un cliente a cada nodo y hace que todos escriban a la vez.
+// Comprueba que cada cliente recibe cada mensaje de cada nodo una sola vez y en el orden de envío.
+//
+// Uso: java -cp SocketChat.jar org.example.Carga.ClusterLoad --nodes=3 --messages=2000 [--port=23000]
+//
+// Los nodos usan los puertos port..port+N-1 para clientes y port+100.. para el clúster.
+// Termina con código 1 si algún cliente no recibió exactamente lo esperado.
+public class ClusterLoad {
+
+    private static final int READ_TIMEOUT_MILLIS = 10000;
+
+    public static void main(String[] args) throws Exception {
+        Map<String, String> options = parseArgs(args);
+        int nodes = Integer.parseInt(options.getOrDefault("nodes", "3"));
+        int messages = Integer.parseInt(options.getOrDefault("messages", "2000"));
+        int port = Integer.parseInt(options.getOrDefault("port", "23000"));
+
+        ChatServerCore[] cores = new ChatServerCore[nodes];
+        for (int i = 0; i < nodes; i++) {
+            ServerConfig config = new ServerConfig();
+            config.setPort(port + i);
+            config.setJmx(false);
+            config.setClientRateLimit(0); // Cada cliente escribe tan rápido como puede
+            config.setMode(i % 2 == 0 ? ServerConfig.Mode.NIO : ServerConfig.Mode.BLOCKING);
+            config.setOutboundQueueCapacity(Math.max(config.getOutboundQueueCapacity(), nodes * messages * 2));
+            config.setNodeId("nodo" + i);
+            config.setClusterPort(port + 100 + i);
+            List<String> peers = new ArrayList<>();
+            for (int j = 0; j < nodes; j++) {
+                if (j != i) {
+                    peers.add("127.0.0.1:" + (port + 100 + j));
+                }
+            }
+            config.setClusterPeers(peers);
+            String node = config.getNodeId();
+            cores[i] = new ChatServerCore(message -> {
+                if (message.contains("clúster")) {
+                    System.out.println("[" + node + "] " + message); // Solo los enlaces, no cada cliente
+                }
+            }, config);
+            new Thread(cores[i], "chat-server-" + i).start();
+        }
+        Thread.sleep(1500); // Que se abran los enlaces entre nodos
+
+        Socket[] sockets = new Socket[nodes];
+        BufferedReader[] readers = new BufferedReader[nodes];
+        PrintWriter[] writers = new PrintWriter[nodes];
+        for (int i = 0; i < nodes; i++) {
+            sockets[i] = new Socket("127.0.0.1", port + i);
+            sockets[i].setSoTimeout(READ_TIMEOUT_MILLIS);
+            readers[i] = new BufferedReader(new InputStreamReader(sockets[i].getInputStream(), StandardCharsets.UTF_8));
+            writers[i] = new PrintWriter(new OutputStreamWriter(sockets[i].getOutputStream(), StandardCharsets.UTF_8), true);
+            readers[i].readLine(); // Petición del nombre
+            writers[i].println("carga" + i);
+        }
+        Thread.sleep(500);
+
+        long start = System.nanoTime();
+        for (int i = 0; i < nodes; i++) {
+            PrintWriter writer = writers[i];
+            new Thread(() -> {
+                for (int m = 0; m < messages; m++) {
+                    writer.println("m " + m);
+                }
+            }, "carga-escritor-" + i).start();
+        }
+
+        boolean ok = true;
+        for (int i = 0; i < nodes; i++) {
+            int[] last = new int[nodes]; // Último mensaje recibido de cada remitente
+            Arrays.fill(last, -1);
+            int received = 0;
+            int outOfOrder = 0;
+            try {
+                String line;
+                while (received < nodes * messages && (line = readers[i].readLine()) != null) {
+                    int from = line.indexOf("|carga");
+                    int text = line.indexOf(": m ", Math.max(from, 0));
+                    if (from < 0 || text < 0) {
+                        continue; // Avisos de entrada y salida
+                    }
+                    int sender = Integer.parseInt(line.substring(from + 6, text));
+                    int m = Integer.parseInt(line.substring(text + 4));
+                    if (m != last[sender] + 1) {
+                        outOfOrder++; // Repetido, perdido o desordenado
+                    }
+                    last[sender] = m;
+                    received++;
+                }
+            } catch (SocketTimeoutException e) {
+                // Faltan mensajes; se informa abajo
+            }
+            boolean complete = received == nodes * messages && outOfOrder == 0;
+            ok &= complete;
+            System.out.printf("cliente %d: recibidos=%d de %d fueraDeOrden=%d último=%s %s%n", i, received,
+                    nodes * messages, outOfOrder, Arrays.toString(last), complete ? "OK" : "FALLO");
+        }
+        System.out.printf("%d mensajes entregados en %.1f s%n", nodes * nodes * messages, (System.nanoTime() - start) / 1e9);
+        for (int i = 0; i < nodes; i++) {
+            System.out.printf("nodo%d: enviados=%d recibidos=%d repetidos=%d descartados=%d%n", i,
+                    cores[i].getMetrics().getClusterMessagesOut(), cores[i].getMetrics().getClusterMessagesIn(),
+                    cores[i].getMetrics().getClusterDuplicates(), cores[i].getMetrics().getClusterDropped());
+        }
+
+        for (int i = 0; i < nodes; i++) {
+            close(sockets[i]);
+        }
+        for (ChatServerCore core : cores) {
+            core.stopServer();
+        }
+        System.exit(ok ? 0 : 1);
+    }
+
+    private static void close(Socket socket) {
+        try {
+            socket.close();
+        } catch (IOException e) {
+            // Ya cerrado
+        }
+    }
+
+    private static Map<String, String> parseArgs(String[] args) {
+        Map<String, String> options = new HashMap<>();
+        for (String arg : args) {
+            if (arg.startsWith("--")) {
+                int eq = arg.indexOf('=');
+                if (eq > 0) {
+                    options.put(arg.substring(2, eq), arg.substring(eq + 1));
+                } else {
+                    options.put(arg.substring(2), "true");
+                }
+            }
+        }
+        return options;
+    }
+}
@@ -0,0 +1,155 @@
+package org.example.Carga;
+
+import org.example.Servidor.ChatServerCore;
+import org.example.Servidor.ServerConfig;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+import java.lang.management.ThreadMXBean;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+// Prueba de carga: abre muchas conexiones inactivas contra un ChatServerCore embebido y
+// muestrea la memoria y los hilos del proceso mientras se mantienen abiertas.
+//
+// Uso: java -cp SocketChat.jar org.example.Carga.IdleConnectionLoad
+//          --connections=50000 --executor=virtual --seconds=60 [--mode=nio] [--no-name] [--external]
+//
+// Con 50k conexiones hace falta subir el límite de descriptores (ulimit -n) y el heap.
+// Los sockets locales se reparten entre 127.0.0.1..127.0.0.N para no agotar los puertos efímeros.
+public class IdleConnectionLoad {
+
+    private static final int CONNECTIONS_PER_SOURCE_ADDRESS = 20000;
+
+    public static void main(String[] args) throws Exception {
+        Map<String, String> options = parseArgs(args);
+        int connections = Integer.parseInt(options.getOrDefault("connections", "50000"));
+        int port = Integer.parseInt(options.getOrDefault("port", "12345"));
+        int seconds = Integer.parseInt(options.getOrDefault("seconds", "60"));
+        boolean sendName = !options.containsKey("no-name");
+
+        ChatServerCore core = null;
+        if (!options.containsKey("external")) {
+            ServerConfig config = ServerConfig.fromSystemProperties();
+            config.setPort(port);
+            if (options.containsKey("mode")) {
+                config.setMode(ServerConfig.Mode.valueOf(options.get("mode").toUpperCase()));
+            }
+            if (options.containsKey("executor")) {
+                config.setHandlerExecutor(ServerConfig.HandlerExecutor.valueOf(options.get("executor").toUpperCase()));
+            }
+            core = new ChatServerCore(message -> { }, config); // Sin log por conexión
+            new Thread(core, "chat-server").start();
+            Thread.sleep(500);
+            System.out.println("Servidor embebido: modo=" + config.getMode() + " ejecutor=" + config.getHandlerExecutor());
+        }
+
+        long baselineHeap = sample("inicio", 0, 0);
+        Selector selector = Selector.open();
+        ByteBuffer drain = ByteBuffer.allocateDirect(64 * 1024);
+        List<SocketChannel> channels = new ArrayList<>(connections);
+        long start = System.nanoTime();
+
+        try {
+            for (int i = 0; i < connections; i++) {
+                SocketChannel channel = SocketChannel.open();
+                channel.bind(new InetSocketAddress("127.0.0." + (1 + i / CONNECTIONS_PER_SOURCE_ADDRESS), 0));
+                channel.connect(new InetSocketAddress("127.0.0.1", port));
+                if (sendName) {
+                    channel.write(ByteBuffer.wrap(("idle-" + i + "\n").getBytes(StandardCharsets.UTF_8)));
+                }
+                channel.configureBlocking(false);
+                channel.register(selector, SelectionKey.OP_READ);
+                channels.add(channel);
+                if ((i + 1) % 1000 == 0) {
+                    drainReadable(selector, drain, 0);
+                }
+                if ((i + 1) % 10000 == 0) {
+                    sample("abiertas", i + 1, baselineHeap);
+                }
+            }
+        } catch (IOException e) {
+            System.out.println("Fallo al abrir la conexión " + (channels.size() + 1) + ": " + e.getMessage()
+                    + " (revisar ulimit -n)");
+        }
+        double openSeconds = (System.nanoTime() - start) / 1e9;
+        System.out.printf("%d conexiones abiertas en %.1f s%n", channels.size(), openSeconds);
+
+        // Mantener las conexiones abiertas, vaciando lo que envíe el servidor
+        long deadline = System.currentTimeMillis() + seconds * 1000L;
+        long nextSample = System.currentTimeMillis() + 5000;
+        while (System.currentTimeMillis() < deadline) {
+            drainReadable(selector, drain, 1000);
+            if (System.currentTimeMillis() >= nextSample) {
+                sample("inactivas", channels.size(), baselineHeap);
+                nextSample += 5000;
+            }
+        }
+
+        for (SocketChannel channel : channels) {
+            channel.close();
+        }
+        selector.close();
+        if (core != null) {
+            core.stopServer();
+        }
+        System.exit(0);
+    }
+
+    // Lee y descarta todo lo disponible para que el servidor nunca se bloquee escribiendo
+    private static void drainReadable(Selector selector, ByteBuffer drain, long timeoutMillis) throws IOException {
+        int ready = timeoutMillis > 0 ? selector.select(timeoutMillis) : selector.selectNow();
+        if (ready == 0) {
+            return;
+        }
+        Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+        while (keys.hasNext()) {
+            SelectionKey key = keys.next();
+            keys.remove();
+            SocketChannel channel = (SocketChannel) key.channel();
+            drain.clear();
+            if (channel.read(drain) < 0) {
+                key.cancel();
+                channel.close();
+            }
+        }
+    }
+
+    // Imprime heap usado (tras un GC) e hilos vivos; devuelve el heap usado en bytes
+    private static long sample(String phase, int connections, long baselineHeap) {
+        MemoryMXBean memory = ManagementFactory.getMemoryMXBean();
+        ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+        System.gc();
+        long used = memory.getHeapMemoryUsage().getUsed();
+        long perConnection = connections > 0 ? (used - baselineHeap) / connections : 0;
+        System.out.printf("[%s] conexiones=%d heap=%d MB (%d B/conexión) noHeap=%d MB hilosPlataforma=%d%n",
+                phase, connections, used >> 20, perConnection,
+                memory.getNonHeapMemoryUsage().getUsed() >> 20, threads.getThreadCount());
+        return used;
+    }
+
+    private static Map<String, String> parseArgs(String[] args) {
+        Map<String, String> options = new HashMap<>();
+        for (String arg : args) {
+            if (arg.startsWith("--")) {
+                int eq = arg.indexOf('=');
+                if (eq > 0) {
+                    options.put(arg.substring(2, eq), arg.substring(eq + 1));
+                } else {
+                    options.put(arg.substring(2), "true");
+                }
+            }
+        }
+        return options;
+    }
+}
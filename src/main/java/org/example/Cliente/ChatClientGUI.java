@@ -1,33 +1,51 @@
 package org.example.Cliente;
 
+import javax.net.ssl.SSLSocketFactory;
 import javax.swing.*;
-import javax.swing.text.*;
 import java.awt.*;
 import java.awt.event.ActionEvent;
 import java.awt.event.ActionListener;
-import java.io.BufferedReader;
 import java.io.IOException;
-import java.io.InputStreamReader;
-import java.io.PrintWriter;
-import java.net.Socket;
-import java.net.UnknownHostException;
+import java.security.GeneralSecurityException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
 
 public class ChatClientGUI extends JFrame {
 
     private static final String SERVER_ADDRESS = "localhost";
     private static final int SERVER_PORT = 12345;
+    // Protocolo que se pide al servidor: "bin1" (por defecto) o "text" para el formato de líneas clásico
+    private static final String PROTOCOL = System.getProperty("chat.client.protocol", ServerReader.PROTOCOL);
+    // Líneas que se conservan en pantalla; las más antiguas se borran
+    private static final int MAX_LINES = Integer.getInteger("chat.client.maxLines", 5000);
+    // Cada cuánto se vuelcan a pantalla las líneas recibidas (16 ms, unos 60 fotogramas por segundo)
+    private static final int RENDER_INTERVAL_MILLIS = Integer.getInteger("chat.client.renderMillis", 16);
 
     private JTextPane messageArea;
     private JTextField messageField;
     private JButton sendButton;
     private JButton reconnectButton;
-    private Socket socket;
-    private PrintWriter writer;
-    private BufferedReader reader;
+    private final ConnectionManager connection = new ConnectionManager(SERVER_ADDRESS, SERVER_PORT, PROTOCOL, new ConnectionEvents(), loadTls());
+
+    private TranscriptDocument doc;
+    // Líneas pendientes de mostrar. El hilo lector solo encola; un Timer las vuelca por lotes
+    // en el hilo de eventos, con una sola actualización del documento por lote. Como mucho se
+    // guardan MAX_LINES: las anteriores se borrarían de la pantalla nada más insertarlas
+    private final ConcurrentLinkedQueue<StyledLine> pendingLines = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger pendingCount = new AtomicInteger();
+    private final List<StyledLine> renderBatch = new ArrayList<>();
+
+    // Usuarios conectados, a partir de las tramas de presencia; se actualiza en el mismo Timer
+    private record PresenceChange(boolean reset, int id, String name) { // name null: desconectado
+    }
 
-    private StyledDocument doc;
-    private SimpleAttributeSet defaultStyle;
-    private SimpleAttributeSet nameStyle;
+    private final ConcurrentLinkedQueue<PresenceChange> pendingPresence = new ConcurrentLinkedQueue<>();
+    private final Map<Integer, String> users = new HashMap<>();
+    private final DefaultListModel<String> userListModel = new DefaultListModel<>();
 
     private boolean isConnected = false;
 
@@ -39,20 +57,25 @@ public class ChatClientGUI extends JFrame {
 
     private void createUI() {
         setDefaultCloseOperation(JFrame.EXIT_ON_CLOSE);
-        setSize(500, 400);
+        setSize(640, 400);
         setLocationRelativeTo(null);
 
-        messageArea = new JTextPane();
+        doc = new TranscriptDocument(MAX_LINES);
+        messageArea = new JTextPane(doc);
         messageArea.setEditable(false);
         JScrollPane scrollPane = new JScrollPane(messageArea);
         add(scrollPane, BorderLayout.CENTER);
 
-        doc = messageArea.getStyledDocument();
-        defaultStyle = new SimpleAttributeSet();
-        StyleConstants.setForeground(defaultStyle, Color.BLACK);
+        JList<String> userList = new JList<>(userListModel);
+        JScrollPane userScrollPane = new JScrollPane(userList);
+        userScrollPane.setBorder(BorderFactory.createTitledBorder("Conectados"));
+        userScrollPane.setPreferredSize(new Dimension(140, 0));
+        add(userScrollPane, BorderLayout.EAST);
 
-        nameStyle = new SimpleAttributeSet();
-        StyleConstants.setBold(nameStyle, true);
+        new Timer(RENDER_INTERVAL_MILLIS, e -> {
+            renderPendingLines();
+            renderPresenceChanges();
+        }).start();
 
         // Panel inferior para entrada de mensaje y botones
         JPanel southPanel = new JPanel(new BorderLayout());
@@ -87,47 +110,62 @@ public class ChatClientGUI extends JFrame {
 
         setVisible(true);
 
-        // Intentar conectar al inicio
-        attemptConnect();
+        // Se conecta en cuanto el usuario escribe su nombre (ver sendMessage)
+        messageField.setEditable(true);
+        sendButton.setEnabled(true);
+        reconnectButton.setEnabled(false);
+        appendStyledMessage("Escribe tu nombre y pulsa Enviar para entrar al chat.");
     }
 
     private void appendStyledMessage(String message) {
-        String[] parts = message.split("\\|", 2);
-        String colorHex = null;
-        String fullMessageContent;
+        appendStyledLine(StyledLine.parse(message));
+    }
 
-        if (parts.length == 2) {
-            colorHex = parts[0];
-            fullMessageContent = parts[1];
-        } else {
-            fullMessageContent = message;
+    // Se puede llamar desde cualquier hilo; la línea aparece en el siguiente volcado
+    private void appendStyledLine(StyledLine line) {
+        pendingLines.add(line);
+        if (pendingCount.incrementAndGet() > MAX_LINES && pendingLines.poll() != null) {
+            pendingCount.decrementAndGet(); // Descarta la más antigua
         }
+    }
 
-        try {
-            if (colorHex != null && fullMessageContent.contains(":")) {
-                int colonIndex = fullMessageContent.indexOf(":");
-                String namePart = fullMessageContent.substring(0, colonIndex + 1);
-                String messagePart = fullMessageContent.substring(colonIndex + 1);
-
-                try {
-                    Color userColor = Color.decode(colorHex);
-                    StyleConstants.setForeground(nameStyle, userColor);
-                } catch (NumberFormatException ex) {
-                    StyleConstants.setForeground(nameStyle, Color.BLACK);
-                }
-
-                doc.insertString(doc.getLength(), namePart, nameStyle);
-                doc.insertString(doc.getLength(), messagePart + "\n", defaultStyle);
+    // Timer del hilo de eventos: vuelca todo lo pendiente de una vez
+    private void renderPendingLines() {
+        StyledLine line;
+        while ((line = pendingLines.poll()) != null) {
+            pendingCount.decrementAndGet();
+            renderBatch.add(line);
+        }
+        if (renderBatch.isEmpty()) {
+            return;
+        }
+        doc.append(renderBatch);
+        renderBatch.clear();
+        messageArea.setCaretPosition(doc.getLength());
+    }
+
+    // Aplica los cambios de presencia pendientes y, si hubo alguno, rehace la lista una sola vez
+    private void renderPresenceChanges() {
+        if (pendingPresence.isEmpty()) {
+            return;
+        }
+        PresenceChange change;
+        while ((change = pendingPresence.poll()) != null) {
+            if (change.reset()) {
+                users.clear();
+            } else if (change.name() != null) {
+                users.put(change.id(), change.name());
             } else {
-                doc.insertString(doc.getLength(), fullMessageContent + "\n", defaultStyle);
+                users.remove(change.id());
             }
-            messageArea.setCaretPosition(doc.getLength());
-        } catch (BadLocationException e) {
-            System.err.println("Error al insertar texto en JTextPane: " + e.getMessage());
         }
+        List<String> names = new ArrayList<>(users.values());
+        names.sort(String.CASE_INSENSITIVE_ORDER);
+        userListModel.clear();
+        userListModel.addAll(names);
     }
 
-    // Nuevo metodo para reintentar conexion
+    // Conecta (o reintenta ya, sin esperar al siguiente intento automático)
     private void attemptConnect() {
         if (isConnected) {
             appendStyledMessage("Ya estás conectado.");
@@ -137,55 +175,51 @@ public class ChatClientGUI extends JFrame {
         appendStyledMessage("Intentando conectar al servidor...");
         // Deshabilitar el botón de reconexión mientras se intenta conectar
         reconnectButton.setEnabled(false);
+        connection.connect();
+    }
 
-        // Intentar la conexión en un hilo separado para no bloquear la GUI
-        new Thread(() -> {
-            try {
-                socket = new Socket(SERVER_ADDRESS, SERVER_PORT);
-                writer = new PrintWriter(socket.getOutputStream(), true);
-                reader = new BufferedReader(new InputStreamReader(socket.getInputStream()));
-
-                SwingUtilities.invokeLater(() -> {
-                    isConnected = true; // Establecer el estado de conexión
-                    sendButton.setEnabled(true);
-                    messageField.setEditable(true);
-                    reconnectButton.setEnabled(false); // Deshabilitar si ya estamos conectados
-                    appendStyledMessage("Conectado al servidor de Chat.");
-                });
-
-                // Hilo para recibir mensajes del servidor
-                String serverMessage;
-                while ((serverMessage = reader.readLine()) != null) {
-                    String finalServerMessage = serverMessage;
-                    SwingUtilities.invokeLater(() -> appendStyledMessage(finalServerMessage));
-                }
-
-            } catch (UnknownHostException e) {
-                SwingUtilities.invokeLater(() -> {
-                    appendStyledMessage("Error: Servidor no encontrado. " + e.getMessage());
-                    handleConnectionLoss(); // Manejar la pérdida/fallo de conexión
-                });
-            } catch (IOException e) {
-                SwingUtilities.invokeLater(() -> {
-                    appendStyledMessage("Error de I/O al conectar/recibir: " + e.getMessage());
-                    handleConnectionLoss(); // Manejar la pérdida/fallo de conexión
-                });
-            } finally {
-                // Si el bucle while termina (conexión cerrada por el servidor o error)
-                SwingUtilities.invokeLater(() -> {
-                    if (isConnected) { // Si estábamos conectados y se cerró la conexión
-                        appendStyledMessage("Desconectado del servidor.");
-                    } else { // Si la conexión falló inicialmente
-                        appendStyledMessage("Fallo la conexión al servidor.");
-                    }
-                    handleConnectionLoss(); // Manejar la pérdida/fallo de conexión
-                });
-                closeConnectionResources(); // Cerrar los recursos del socket
-            }
-        }).start();
+    // Avisos de ConnectionManager, que llegan desde su hilo
+    private class ConnectionEvents implements ConnectionManager.Listener {
+        @Override
+        public void onLine(StyledLine line) {
+            appendStyledLine(line);
+        }
+
+        @Override
+        public void onStatus(String message) {
+            appendStyledMessage(message);
+        }
+
+        @Override
+        public void online(int id, String colorHex, String name) {
+            pendingPresence.add(new PresenceChange(false, id, name));
+        }
+
+        @Override
+        public void offline(int id) {
+            pendingPresence.add(new PresenceChange(false, id, null));
+        }
+
+        @Override
+        public void onConnected() {
+            pendingPresence.add(new PresenceChange(true, 0, null)); // El servidor vuelve a enviar la lista completa
+            SwingUtilities.invokeLater(() -> {
+                isConnected = true; // Establecer el estado de conexión
+                sendButton.setEnabled(true);
+                messageField.setEditable(true);
+                reconnectButton.setEnabled(false); // Deshabilitar si ya estamos conectados
+                appendStyledMessage("Conectado al servidor de Chat.");
+            });
+        }
+
+        @Override
+        public void onDisconnected() {
+            SwingUtilities.invokeLater(() -> handleConnectionLoss());
+        }
     }
 
-    // Metodo para manejar la lógica cuando la conexión se pierde o falla
+    // Metodo para manejar la lógica cuando la conexión se pierde o falla.
+    // El botón sigue disponible para no esperar al reintento automático
     private void handleConnectionLoss() {
         isConnected = false;
         sendButton.setEnabled(false);
@@ -193,41 +227,27 @@ public class ChatClientGUI extends JFrame {
         reconnectButton.setEnabled(true); // Habilitar el botón de reconexión
     }
 
-    // Nuevo metodo para cerrar solo los recursos del socket sin afectar la GUI
-    private void closeConnectionResources() {
-        try {
-            if (socket != null && !socket.isClosed()) {
-                socket.close();
-            }
-            if (writer != null) {
-                writer.close();
-            }
-            if (reader != null) {
-                reader.close();
-            }
-        } catch (IOException e) {
-            System.err.println("Error al cerrar los recursos del socket: " + e.getMessage());
-        } finally {
-            socket = null; // Asegurarse de que el socket sea nulo para una nueva conexión
-            writer = null;
-            reader = null;
-        }
-    }
-
-
     private void sendMessage() {
         String message = messageField.getText();
+        if (!connection.hasName()) {
+            if (message != null && !message.trim().isEmpty()) {
+                messageField.setText("");
+                connection.setName(message.trim());
+                attemptConnect();
+            }
+            return;
+        }
         if (isConnected && message != null && !message.trim().isEmpty()) { // Solo enviar si está conectado
-            writer.println(message);
             messageField.setText("");
-
             if (message.equalsIgnoreCase("/quit")) {
-                SwingUtilities.invokeLater(() -> appendStyledMessage("Saliendo del chat..."));
-                closeConnectionResources(); // Cerrar recursos
+                appendStyledMessage("Saliendo del chat...");
+                connection.quit(); // Cierra sin reconectar
                 handleConnectionLoss(); // Actualizar estado de GUI
+            } else if (!connection.send(message)) {
+                appendStyledMessage("No estás conectado al servidor. Espera a que se reconecte.");
             }
         } else if (!isConnected) {
-            SwingUtilities.invokeLater(() -> appendStyledMessage("No estás conectado al servidor. Intenta reconectar."));
+            appendStyledMessage("No estás conectado al servidor. Intenta reconectar.");
             messageField.setText("");
         }
     }
@@ -241,6 +261,15 @@ public class ChatClientGUI extends JFrame {
         }
     }
 
+    // Texto plano salvo que se pida TLS con -Dchat.client.tls=true (ver ClientTls). Si se pidió y no se
+    // puede preparar, el cliente no arranca en lugar de conectar sin cifrar
+    private static SSLSocketFactory loadTls() {
+        try {
+            return ClientTls.fromSystemProperties();
+        } catch (IOException | GeneralSecurityException e) {
+            throw new IllegalStateException("No se pudo preparar TLS: " + e.getMessage(), e);
+        }
+    }
 
     public static void main(String[] args) {
         SwingUtilities.invokeLater(() -> new ChatClientGUI());
@@ -0,0 +1,39 @@
+package org.example.Cliente;
+
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.SSLSocketFactory;
+import javax.net.ssl.TrustManagerFactory;
+import java.io.File;
+import java.io.IOException;
+import java.security.GeneralSecurityException;
+import java.security.KeyStore;
+
+// Configuración TLS del cliente a partir de propiedades del sistema:
+//   -Dchat.client.tls=true                      conectar con TLS
+//   -Dchat.client.trustStore=confianza.p12      certificados en los que confiar (p. ej. el autofirmado
+//   -Dchat.client.trustStorePassword=...        del servidor); sin él, los del sistema
+// Se crea un único contexto por proceso: así las reconexiones reanudan la sesión TLS anterior
+// en lugar de repetir el handshake completo.
+final class ClientTls {
+
+    private ClientTls() {
+    }
+
+    // Devuelve null si no se pidió TLS
+    static SSLSocketFactory fromSystemProperties() throws IOException, GeneralSecurityException {
+        if (!Boolean.getBoolean("chat.client.tls")) {
+            return null;
+        }
+        String trustStore = System.getProperty("chat.client.trustStore");
+        if (trustStore == null) {
+            return SSLContext.getDefault().getSocketFactory();
+        }
+        String password = System.getProperty("chat.client.trustStorePassword");
+        KeyStore keyStore = KeyStore.getInstance(new File(trustStore), password != null ? password.toCharArray() : null);
+        TrustManagerFactory trustManagers = TrustManagerFactory.getInstance(TrustManagerFactory.getDefaultAlgorithm());
+        trustManagers.init(keyStore);
+        SSLContext context = SSLContext.getInstance("TLS");
+        context.init(null, trustManagers.getTrustManagers(), null);
+        return context.getSocketFactory();
+    }
+}
@@ -0,0 +1,315 @@
+package org.example.Cliente;
+
+import javax.net.ssl.SSLParameters;
+import javax.net.ssl.SSLSocket;
+import javax.net.ssl.SSLSocketFactory;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+
+// Conexión del cliente con el servidor. Un único hilo conecta y lee lo que llega; si la conexión
+// se pierde sin /quit, vuelve a conectar solo con espera exponencial y aleatoria (full jitter),
+// para que tras reiniciar el servidor no reconecten todos los clientes a la vez.
+// Al reconectar se saluda de nuevo con el nombre, el token de sesión y la última secuencia vista:
+// el servidor conserva nombre, color y sala y reenvía lo que se perdió. Con TLS, el mismo
+// SSLSocketFactory en todas las conexiones permite reanudar la sesión TLS al reconectar.
+final class ConnectionManager {
+
+    // Avisos de la conexión (y de presencia); se llaman desde el hilo de la conexión, no desde el de Swing
+    interface Listener extends ServerReader.PresenceListener {
+        void onLine(StyledLine line);
+
+        void onStatus(String message);
+
+        void onConnected();
+
+        void onDisconnected();
+    }
+
+    private static final int CONNECT_TIMEOUT_MILLIS = 5000;
+    private static final long MIN_BACKOFF_MILLIS = 500;
+    private static final long MAX_BACKOFF_MILLIS = 30_000;
+    private static final String WELCOME_PROMPT = "Bienvenido al Chat. Por favor, ingresa tu nombre:"; // Ya contestado con el saludo
+
+    private final String host;
+    private final int port;
+    private final String protocol;
+    private final Listener listener;
+    private final SSLSocketFactory tls; // null: texto plano
+    private final ScheduledExecutorService executor = Executors.newSingleThreadScheduledExecutor(task -> {
+        Thread thread = new Thread(task, "chat-connection");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private Socket socket;
+    private PrintWriter writer;
+    private boolean active = false;    // Conectando o conectado (no mientras se espera para reintentar)
+    private boolean stopped = false;   // Salió con /quit: no reconectar solo
+    private int attempt = 0;           // Intentos fallidos seguidos, para la espera
+    private ScheduledFuture<?> retry;
+    private String name;               // null hasta que el usuario escribe su nombre
+    private volatile String session;   // Token de la última sesión; null si no hay
+    private volatile long lastSequence = 0;
+    private volatile String room;      // Sala actual, para volver a ella si el servidor no reconoce la sesión
+
+    ConnectionManager(String host, int port, String protocol, Listener listener) {
+        this(host, port, protocol, listener, null);
+    }
+
+    ConnectionManager(String host, int port, String protocol, Listener listener, SSLSocketFactory tls) {
+        this.host = host;
+        this.port = port;
+        this.protocol = protocol;
+        this.listener = listener;
+        this.tls = tls;
+    }
+
+    // Conecta ya (botón "Reconectar"), sin esperar al siguiente reintento
+    void connect() {
+        lock.lock();
+        try {
+            if (active) {
+                return;
+            }
+            if (retry != null) {
+                retry.cancel(false);
+                retry = null;
+            }
+            stopped = false;
+            attempt = 0;
+            executor.execute(this::attemptConnection);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // El nombre se pide antes de conectar: así el saludo sale nada más conectar y el plazo del
+    // servidor para recibirlo (handshakeTimeoutMillis) no depende de lo que tarde el usuario en escribir
+    void setName(String name) {
+        lock.lock();
+        try {
+            if (this.name == null) {
+                this.name = name;
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    boolean hasName() {
+        lock.lock();
+        try {
+            return name != null;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    boolean isConnected() {
+        lock.lock();
+        try {
+            return writer != null;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // Envía lo que escribió el usuario; si aún no había nombre (no se llamó a setName), es el nombre.
+    // Devuelve false si no hay conexión
+    boolean send(String message) {
+        lock.lock();
+        try {
+            if (writer == null) {
+                return false;
+            }
+            if (name == null) {
+                name = message;
+                writer.println(helloLine());
+            } else {
+                writer.println(message);
+            }
+            return true;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // Sale con /quit y cierra sin reconectar; el servidor da la sesión por terminada
+    void quit() {
+        lock.lock();
+        try {
+            stopped = true;
+            session = null;
+            if (writer != null) {
+                writer.println("/quit");
+            }
+            closeSocket();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // "@hello proto=bin1 presence=1 deflate=1 [since=N] [room=S] [session=T] nombre"; en modo texto solo el nombre (servidores antiguos)
+    private String helloLine() {
+        if (!ServerReader.PROTOCOL.equals(protocol)) {
+            return name;
+        }
+        StringBuilder hello = new StringBuilder("@hello proto=").append(protocol).append(" presence=1 deflate=1");
+        if (lastSequence > 0) {
+            hello.append(" since=").append(lastSequence);
+        }
+        if (room != null) {
+            hello.append(" room=").append(room);
+        }
+        if (session != null) {
+            hello.append(" session=").append(session);
+        }
+        return hello.append(' ').append(name).toString();
+    }
+
+    // Lo ejecuta el hilo de la conexión, por connect() o al acabar la espera
+    private void attemptConnection() {
+        Socket s = new Socket();
+        lock.lock();
+        try {
+            if (active || stopped) {
+                return;
+            }
+            active = true;
+            retry = null;
+            socket = s;
+        } finally {
+            lock.unlock();
+        }
+        runConnection(s);
+    }
+
+    private void runConnection(Socket s) {
+        boolean connected = false;
+        boolean greeted = false; // Saludo enviado al conectar: la petición del nombre ya está contestada
+        try {
+            s.connect(new InetSocketAddress(host, port), CONNECT_TIMEOUT_MILLIS);
+            if (tls != null) {
+                s = startTls(s);
+            }
+            try (ServerReader reader = new ServerReader(s.getInputStream(), lastSequence, listener)) { // Libera sus Inflater
+                lock.lock();
+                try {
+                    writer = new PrintWriter(new OutputStreamWriter(s.getOutputStream(), StandardCharsets.UTF_8), true);
+                    attempt = 0;
+                    connected = true;
+                    if (name != null) {
+                        greeted = true;
+                        writer.println(helloLine()); // Sin esperar a la petición del nombre; al reconectar, reanuda la sesión
+                    }
+                } finally {
+                    lock.unlock();
+                }
+                listener.onConnected();
+
+                StyledLine line;
+                while ((line = reader.next()) != null) {
+                    if (greeted && line.namePart == null && WELCOME_PROMPT.equals(line.messagePart)) {
+                        continue; // El saludo ya va de camino
+                    }
+                    lastSequence = reader.lastSequence();
+                    String token = reader.session();
+                    if (token != null) {
+                        session = token;
+                    }
+                    if (reader.room() != null) {
+                        room = reader.room();
+                    }
+                    listener.onLine(line);
+                }
+                listener.onStatus("Desconectado del servidor.");
+            }
+        } catch (IOException e) {
+            if (!isStopped()) {
+                listener.onStatus(connected ? "Conexión perdida: " + e.getMessage()
+                        : "No se pudo conectar al servidor: " + e.getMessage());
+            }
+        } finally {
+            finishConnection(connected);
+        }
+    }
+
+    // Handshake TLS sobre el socket ya conectado, comprobando que el certificado sea de host
+    private Socket startTls(Socket plain) throws IOException {
+        SSLSocket secure = (SSLSocket) tls.createSocket(plain, host, port, true); // host y puerto: clave para reanudar
+        SSLParameters parameters = secure.getSSLParameters();
+        parameters.setEndpointIdentificationAlgorithm("HTTPS");
+        secure.setSSLParameters(parameters);
+        lock.lock();
+        try {
+            if (socket != plain) {
+                secure.close(); // Se cerró con /quit mientras conectaba
+                throw new IOException("Conexión cerrada");
+            }
+            socket = secure;
+        } finally {
+            lock.unlock();
+        }
+        secure.setSoTimeout(CONNECT_TIMEOUT_MILLIS);
+        secure.startHandshake();
+        secure.setSoTimeout(0);
+        return secure;
+    }
+
+    private boolean isStopped() {
+        lock.lock();
+        try {
+            return stopped;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // Libera el socket y, si no se salió con /quit, programa el siguiente intento
+    private void finishConnection(boolean wasConnected) {
+        long delay = -1;
+        lock.lock();
+        try {
+            closeSocket();
+            active = false;
+            if (!stopped) {
+                long cap = Math.min(MAX_BACKOFF_MILLIS, MIN_BACKOFF_MILLIS << Math.min(attempt, 16));
+                attempt++;
+                delay = ThreadLocalRandom.current().nextLong(cap + 1);
+                retry = executor.schedule(this::attemptConnection, delay, TimeUnit.MILLISECONDS);
+            }
+        } finally {
+            lock.unlock();
+        }
+        if (wasConnected) {
+            listener.onDisconnected();
+        }
+        if (delay >= 0) {
+            listener.onStatus(String.format("Reintentando la conexión en %.1f s...", delay / 1000.0));
+        }
+    }
+
+    private void closeSocket() {
+        try {
+            if (socket != null) {
+                socket.close();
+            }
+        } catch (IOException e) {
+            System.err.println("Error al cerrar los recursos del socket: " + e.getMessage());
+        } finally {
+            socket = null;
+            writer = null;
+        }
+    }
+}
@@ -0,0 +1,271 @@
+package org.example.Cliente;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+
+// Lee lo que envía el servidor. Empieza en modo texto (una línea por mensaje) y, si el servidor
+// acepta el protocolo binario con "@hello proto=bin1", pasa a leer tramas con longitud.
+// El formato de las tramas está descrito en org.example.Servidor.BinaryFrames. Las tramas comprimidas
+// (pedidas con "@hello deflate=1") se descomprimen aquí y sus tramas se leen como las demás.
+final class ServerReader implements Closeable {
+
+    static final String PROTOCOL = "bin1";
+
+    private static final byte JOIN = 1;
+    private static final byte LEAVE = 2;
+    private static final byte CHAT = 3;
+    private static final byte SYSTEM = 4;
+    private static final byte HISTORY = 5;
+    private static final byte PRIVATE = 6;
+    private static final byte PRESENCE = 7;
+    private static final byte DEFLATED = 8;
+    private static final byte DEFLATE_STREAM = 9;
+    private static final String[] ROOM_NOTICES = {"Ahora estás en la sala ", "Sigues en la sala "}; // "... <sala>."
+
+    // Cambios de la lista de usuarios conectados (tramas PRESENCE, pedidas con "@hello presence=1")
+    interface PresenceListener {
+        void online(int id, String colorHex, String name);
+
+        void offline(int id);
+    }
+
+    private final DataInputStream in;
+    private final ByteArrayOutputStream lineBytes = new ByteArrayOutputStream(256);
+    private final Map<Integer, Sender> senders = new HashMap<>(); // Remitentes presentados con JOIN
+    private final PresenceListener presence; // Puede ser null
+    private final Inflater frameInflater = new Inflater(true);  // DEFLATED: cada trama por separado
+    private final Inflater streamInflater = new Inflater(true); // DEFLATE_STREAM: conserva el flujo entre tramas
+    private final ArrayDeque<ByteBuffer> inflated = new ArrayDeque<>(); // Tramas descomprimidas por leer, desde el tipo
+    private boolean binary = false;
+    private volatile long lastSequence; // Última secuencia del historial recibida
+    private volatile String session;    // Token de sesión de la respuesta "@hello"; null si no hay
+    private volatile String room;       // Sala confirmada por el servidor; null si no ha cambiado
+
+    private record Sender(String colorHex, String name) {
+    }
+
+    ServerReader(InputStream in, long lastSequence) {
+        this(in, lastSequence, null);
+    }
+
+    ServerReader(InputStream in, long lastSequence, PresenceListener presence) {
+        this.in = new DataInputStream(new BufferedInputStream(in));
+        this.lastSequence = lastSequence;
+        this.presence = presence;
+    }
+
+    long lastSequence() {
+        return lastSequence;
+    }
+
+    String session() {
+        return session;
+    }
+
+    String room() {
+        return room;
+    }
+
+    // Devuelve la siguiente línea a mostrar o null cuando el servidor cierra la conexión
+    StyledLine next() throws IOException {
+        while (true) {
+            if (!binary) {
+                String line = readTextLine();
+                if (line == null) {
+                    return null;
+                }
+                if (line.startsWith("@hello ")) {
+                    for (String option : line.substring("@hello ".length()).split(" ")) {
+                        if (option.equals("proto=" + PROTOCOL)) {
+                            binary = true; // Lo que sigue ya son tramas binarias
+                        } else if (option.startsWith("session=")) {
+                            session = option.substring("session=".length());
+                        }
+                    }
+                    continue;
+                }
+                return StyledLine.parse(line);
+            }
+
+            ByteBuffer frame = inflated.poll();
+            if (frame != null) {
+                StyledLine line = decode(frame.get(), frame);
+                if (line != null) {
+                    return line;
+                }
+                continue;
+            }
+
+            int length;
+            try {
+                length = in.readInt();
+            } catch (EOFException e) {
+                return null;
+            }
+            byte type = in.readByte();
+            byte[] body = new byte[length - 1];
+            in.readFully(body);
+            if (type == DEFLATED || type == DEFLATE_STREAM) {
+                inflate(type, body);
+                continue;
+            }
+            StyledLine line = decode(type, ByteBuffer.wrap(body));
+            if (line != null) {
+                return line;
+            }
+        }
+    }
+
+    // Descomprime una trama DEFLATED o DEFLATE_STREAM y deja en inflated las tramas que contiene
+    private void inflate(byte type, byte[] body) throws IOException {
+        Inflater inflater = type == DEFLATED ? frameInflater : streamInflater;
+        int offset = 0;
+        if (type == DEFLATED || body.length > 0 && body[0] == 1) {
+            inflater.reset();
+        }
+        if (type == DEFLATE_STREAM) {
+            offset = 1; // Byte de inicio de flujo
+        }
+        inflater.setInput(body, offset, body.length - offset);
+        byte[] out = new byte[Math.max(256, body.length * 4)];
+        int length = 0;
+        try {
+            while (true) {
+                if (length == out.length) {
+                    out = Arrays.copyOf(out, out.length * 2);
+                }
+                length += inflater.inflate(out, length, out.length - length);
+                if (inflater.finished() || length < out.length && inflater.needsInput()) {
+                    break;
+                }
+            }
+        } catch (DataFormatException e) {
+            throw new IOException("Trama comprimida no válida: " + e.getMessage(), e);
+        }
+        ByteBuffer frames = ByteBuffer.wrap(out, 0, length);
+        while (frames.remaining() >= 4) {
+            int frameLength = frames.getInt();
+            if (frameLength < 1 || frameLength > frames.remaining()) {
+                throw new IOException("Trama comprimida incompleta");
+            }
+            inflated.add(ByteBuffer.wrap(out, frames.position(), frameLength)); // Vista sobre out: decode usa array()
+            frames.position(frames.position() + frameLength);
+        }
+        if (frames.hasRemaining()) {
+            throw new IOException("Trama comprimida incompleta");
+        }
+    }
+
+    // Devuelve null para las tramas que no se muestran (presentaciones y tipos desconocidos)
+    private StyledLine decode(byte type, ByteBuffer body) {
+        switch (type) {
+            case JOIN: {
+                int id = body.getInt();
+                seen(body.getLong());
+                int rgb = ((body.get() & 0xFF) << 16) | ((body.get() & 0xFF) << 8) | (body.get() & 0xFF);
+                byte[] name = new byte[body.getShort() & 0xFFFF];
+                body.get(name);
+                Sender sender = new Sender(String.format("#%06x", rgb), new String(name, StandardCharsets.UTF_8));
+                senders.put(id, sender);
+                String text = remainingText(body);
+                return text.isEmpty() ? null : StyledLine.chat(sender.colorHex, sender.name, text);
+            }
+            case LEAVE: {
+                Sender sender = senders.remove(body.getInt());
+                seen(body.getLong());
+                return chatLine(sender, remainingText(body));
+            }
+            case CHAT: {
+                Sender sender = senders.get(body.getInt());
+                seen(body.getLong());
+                return chatLine(sender, remainingText(body));
+            }
+            case PRIVATE: {
+                Sender sender = senders.get(body.getInt());
+                body.getLong();
+                String text = remainingText(body);
+                return sender == null ? StyledLine.plain(text) : StyledLine.chat(sender.colorHex, sender.name + " (privado)", text);
+            }
+            case PRESENCE: {
+                boolean online = body.get() != 0;
+                int id = body.getInt();
+                if (presence != null) {
+                    if (online) {
+                        int rgb = ((body.get() & 0xFF) << 16) | ((body.get() & 0xFF) << 8) | (body.get() & 0xFF);
+                        presence.online(id, String.format("#%06x", rgb), remainingText(body));
+                    } else {
+                        presence.offline(id);
+                    }
+                }
+                return null;
+            }
+            case SYSTEM: {
+                String text = remainingText(body);
+                for (String notice : ROOM_NOTICES) {
+                    if (text.startsWith(notice) && text.endsWith(".")) {
+                        room = text.substring(notice.length(), text.length() - 1);
+                    }
+                }
+                return StyledLine.plain(text);
+            }
+            case HISTORY: {
+                seen(body.getLong());
+                String line = remainingText(body);
+                return StyledLine.parse(line.endsWith("\n") ? line.substring(0, line.length() - 1) : line);
+            }
+            default:
+                return null;
+        }
+    }
+
+    private void seen(long sequence) {
+        if (sequence > lastSequence) {
+            lastSequence = sequence;
+        }
+    }
+
+    private static StyledLine chatLine(Sender sender, String text) {
+        if (sender == null) {
+            return StyledLine.plain(text); // No debería ocurrir: el servidor presenta antes a cada remitente
+        }
+        return StyledLine.chat(sender.colorHex, sender.name, text);
+    }
+
+    private static String remainingText(ByteBuffer body) {
+        return new String(body.array(), body.position(), body.remaining(), StandardCharsets.UTF_8);
+    }
+
+    // Lee una línea UTF-8 terminada en '\n' sin usar un Reader, que se quedaría con bytes binarios
+    private String readTextLine() throws IOException {
+        lineBytes.reset();
+        int b;
+        while ((b = in.read()) != -1 && b != '\n') {
+            lineBytes.write(b);
+        }
+        if (b == -1 && lineBytes.size() == 0) {
+            return null;
+        }
+        String line = lineBytes.toString(StandardCharsets.UTF_8);
+        return line.endsWith("\r") ? line.substring(0, line.length() - 1) : line;
+    }
+
+    @Override
+    public void close() throws IOException {
+        frameInflater.end();
+        streamInflater.end();
+        in.close();
+    }
+}
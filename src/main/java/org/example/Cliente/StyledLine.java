@@ -0,0 +1,51 @@
+package org.example.Cliente;
+
+// Línea recibida del servidor separada en sus partes: "#rrggbb|nombre: mensaje".
+// Las líneas sin color o sin nombre (mensajes del sistema) solo tienen messagePart.
+// Con el protocolo binario las partes llegan ya separadas (ver ServerReader).
+final class StyledLine {
+
+    final String colorHex;    // null si la línea no trae color
+    final String namePart;    // Nombre con los dos puntos; null si no hay nombre
+    final String messagePart; // Resto de la línea
+
+    private StyledLine(String colorHex, String namePart, String messagePart) {
+        this.colorHex = colorHex;
+        this.namePart = namePart;
+        this.messagePart = messagePart;
+    }
+
+    boolean hasName() {
+        return namePart != null;
+    }
+
+    // Línea de chat ya separada (protocolo binario): se muestra igual que "color|nombre: mensaje"
+    static StyledLine chat(String colorHex, String name, String message) {
+        return new StyledLine(colorHex, name + ":", " " + message);
+    }
+
+    static StyledLine plain(String message) {
+        return new StyledLine(null, null, message);
+    }
+
+    static StyledLine parse(String message) {
+        String[] parts = message.split("\\|", 2);
+        String colorHex = null;
+        String fullMessageContent;
+
+        if (parts.length == 2) {
+            colorHex = parts[0];
+            fullMessageContent = parts[1];
+        } else {
+            fullMessageContent = message;
+        }
+
+        if (colorHex != null && fullMessageContent.contains(":")) {
+            int colonIndex = fullMessageContent.indexOf(":");
+            return new StyledLine(colorHex,
+                    fullMessageContent.substring(0, colonIndex + 1),
+                    fullMessageContent.substring(colonIndex + 1));
+        }
+        return new StyledLine(colorHex, null, fullMessageContent);
+    }
+}
@@ -0,0 +1,94 @@
+package org.example.Cliente;
+
+import javax.swing.text.AttributeSet;
+import javax.swing.text.BadLocationException;
+import javax.swing.text.DefaultStyledDocument;
+import javax.swing.text.Element;
+import javax.swing.text.SimpleAttributeSet;
+import javax.swing.text.StyleConstants;
+import java.awt.Color;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+// Documento de la conversación: añade las líneas por lotes con una sola inserción (un único evento
+// para la vista) y borra las más antiguas cuando se supera maxLines. Los estilos de nombre se
+// crean una vez por color. Como todo documento Swing, solo se modifica desde el hilo de eventos.
+final class TranscriptDocument extends DefaultStyledDocument {
+
+    private static final int MAX_CACHED_STYLES = 1024;
+
+    private final int maxLines;
+    private final SimpleAttributeSet defaultStyle = new SimpleAttributeSet();
+    private final Map<String, AttributeSet> nameStyles = new HashMap<>();
+
+    TranscriptDocument(int maxLines) {
+        this.maxLines = Math.max(1, maxLines);
+        StyleConstants.setForeground(defaultStyle, Color.BLACK);
+    }
+
+    // Añade las líneas al final y recorta el principio si hace falta
+    void append(List<StyledLine> lines) {
+        if (lines.isEmpty()) {
+            return;
+        }
+        List<ElementSpec> specs = new ArrayList<>(lines.size() * 4 + 2);
+        if (getLength() > 0) {
+            // Insertar al final cae en el último párrafo con texto: se cierra para que el lote empiece uno nuevo
+            specs.add(new ElementSpec(null, ElementSpec.EndTagType));
+            specs.add(new ElementSpec(null, ElementSpec.StartTagType));
+        }
+        for (StyledLine line : lines) {
+            if (line.hasName()) {
+                addContent(specs, nameStyle(line.colorHex), line.namePart);
+            }
+            addContent(specs, defaultStyle, line.messagePart + "\n");
+            specs.add(new ElementSpec(null, ElementSpec.EndTagType));
+            specs.add(new ElementSpec(null, ElementSpec.StartTagType));
+        }
+        try {
+            insert(getLength(), specs.toArray(new ElementSpec[0]));
+            trim();
+        } catch (BadLocationException e) {
+            System.err.println("Error al insertar texto en JTextPane: " + e.getMessage());
+        }
+    }
+
+    // Cada línea es un párrafo; el último párrafo está siempre vacío
+    int lineCount() {
+        return getDefaultRootElement().getElementCount() - 1;
+    }
+
+    private void trim() throws BadLocationException {
+        int excess = lineCount() - maxLines;
+        if (excess > 0) {
+            Element lastRemoved = getDefaultRootElement().getElement(excess - 1);
+            remove(0, lastRemoved.getEndOffset());
+        }
+    }
+
+    private static void addContent(List<ElementSpec> specs, AttributeSet style, String text) {
+        char[] chars = text.toCharArray();
+        specs.add(new ElementSpec(style, ElementSpec.ContentType, chars, 0, chars.length));
+    }
+
+    private AttributeSet nameStyle(String colorHex) {
+        AttributeSet style = nameStyles.get(colorHex);
+        if (style == null) {
+            if (nameStyles.size() >= MAX_CACHED_STYLES) {
+                nameStyles.clear(); // Colores aleatorios por cliente: que la caché no crezca sin límite
+            }
+            SimpleAttributeSet attributes = new SimpleAttributeSet();
+            StyleConstants.setBold(attributes, true);
+            try {
+                StyleConstants.setForeground(attributes, Color.decode(colorHex));
+            } catch (NumberFormatException e) {
+                StyleConstants.setForeground(attributes, Color.BLACK);
+            }
+            style = attributes.copyAttributes();
+            nameStyles.put(colorHex, style);
+        }
+        return style;
+    }
+}
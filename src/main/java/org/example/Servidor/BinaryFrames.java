@@ -0,0 +1,126 @@
+package org.example.Servidor;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+// Codificación del protocolo binario "bin1", que el cliente pide en el saludo con
+// "@hello proto=bin1 <nombre>". El servidor contesta "@hello proto=bin1" en una línea de texto
+// y a partir de ahí todas sus tramas son binarias (lo que envía el cliente sigue siendo texto).
+//
+// Trama: int longitud (bytes que siguen) | byte tipo | cuerpo
+//   JOIN    int id | long secuencia | 3 bytes color RGB | short longitud del nombre | nombre UTF-8 | texto UTF-8
+//   LEAVE   int id | long secuencia | texto UTF-8
+//   CHAT    int id | long secuencia | texto UTF-8
+//   SYSTEM  texto UTF-8
+//   HISTORY long secuencia | línea del protocolo de texto "color|nombre: mensaje\n" (reproducción del historial)
+//   PRIVATE int id | long secuencia (siempre 0) | texto UTF-8 (mensaje directo con /msg)
+//   PRESENCE byte 1 | int id | 3 bytes color RGB | nombre UTF-8   (usuario conectado)
+//            byte 0 | int id                                     (usuario desconectado)
+//   DEFLATED       deflate sin cabecera zlib de una trama completa (longitud, tipo y cuerpo)
+//   DEFLATE_STREAM byte 1 si empieza un flujo nuevo, 0 si sigue el anterior | datos deflate
+//                  que terminan en un sync flush y contienen una o varias tramas completas
+// Las tramas comprimidas solo se envían a quien las pide con "@hello deflate=1" (ver FrameCompressor);
+// nunca contienen otra trama comprimida.
+// Las tramas PRESENCE solo se envían a quien las pide con "@hello presence=1": al registrarse
+// recibe una por cada usuario conectado y después solo los cambios. Sus ids son los de remitente.
+// Cada remitente tiene un id numérico. Su color y su nombre viajan solo en el JOIN; un JOIN
+// con el texto vacío solo presenta al remitente y el cliente no lo muestra.
+// La secuencia es la del MessageLog (0 si no hay historial); el cliente la guarda para pedir
+// al reconectar lo que se perdió con "@hello since=<secuencia>".
+final class BinaryFrames {
+
+    static final String PROTOCOL = "bin1";
+
+    static final byte JOIN = 1;
+    static final byte LEAVE = 2;
+    static final byte CHAT = 3;
+    static final byte SYSTEM = 4;
+    static final byte HISTORY = 5;
+    static final byte PRIVATE = 6;
+    static final byte PRESENCE = 7;
+    static final byte DEFLATED = 8;
+    static final byte DEFLATE_STREAM = 9;
+
+    static final int HEADER = 5; // longitud + tipo
+
+    private BinaryFrames() {
+    }
+
+    static ByteBuffer join(ChatServerCore.ClientInfo sender, long sequence, String text) {
+        byte[] name = sender.name.getBytes(StandardCharsets.UTF_8);
+        byte[] body = text.getBytes(StandardCharsets.UTF_8);
+        int nameLength = Math.min(name.length, 0xFFFF); // El cliente lee la longitud sin signo
+        int rgb = Integer.parseInt(sender.colorHex.substring(1), 16);
+        ByteBuffer frame = header(JOIN, 4 + 8 + 3 + 2 + nameLength + body.length);
+        frame.putInt(sender.id);
+        frame.putLong(sequence);
+        frame.put((byte) (rgb >> 16)).put((byte) (rgb >> 8)).put((byte) rgb);
+        frame.putShort((short) nameLength);
+        frame.put(name, 0, nameLength).put(body);
+        return Frames.share(frame.array());
+    }
+
+    static ByteBuffer leave(ChatServerCore.ClientInfo sender, long sequence, String text) {
+        return withSender(LEAVE, sender, sequence, text);
+    }
+
+    static ByteBuffer chat(ChatServerCore.ClientInfo sender, long sequence, String text) {
+        return withSender(CHAT, sender, sequence, text);
+    }
+
+    static ByteBuffer privateMessage(ChatServerCore.ClientInfo sender, String text) {
+        return withSender(PRIVATE, sender, 0, text);
+    }
+
+    static ByteBuffer presence(ChatServerCore.ClientInfo user, boolean online) {
+        if (!online) {
+            ByteBuffer frame = header(PRESENCE, 1 + 4);
+            frame.put((byte) 0).putInt(user.id);
+            return Frames.share(frame.array());
+        }
+        byte[] name = user.name.getBytes(StandardCharsets.UTF_8);
+        int rgb = Integer.parseInt(user.colorHex.substring(1), 16);
+        ByteBuffer frame = header(PRESENCE, 1 + 4 + 3 + name.length);
+        frame.put((byte) 1).putInt(user.id);
+        frame.put((byte) (rgb >> 16)).put((byte) (rgb >> 8)).put((byte) rgb);
+        frame.put(name);
+        return Frames.share(frame.array());
+    }
+
+    static ByteBuffer system(String text) {
+        byte[] body = text.getBytes(StandardCharsets.UTF_8);
+        ByteBuffer frame = header(SYSTEM, body.length);
+        frame.put(body);
+        return Frames.share(frame.array());
+    }
+
+    // Envuelve una trama de texto leída del historial
+    static ByteBuffer history(long sequence, ByteBuffer textLine) {
+        ByteBuffer frame = header(HISTORY, 8 + textLine.remaining());
+        frame.putLong(sequence);
+        frame.put(textLine.duplicate());
+        return Frames.share(frame.array());
+    }
+
+    // Completa la cabecera de una trama cuyo cuerpo ya está en buffer a partir de HEADER
+    static ByteBuffer withHeader(byte type, byte[] buffer, int bodyLength) {
+        ByteBuffer.wrap(buffer).putInt(1 + bodyLength).put(type);
+        return Frames.share(buffer, HEADER + bodyLength);
+    }
+
+    private static ByteBuffer withSender(byte type, ChatServerCore.ClientInfo sender, long sequence, String text) {
+        byte[] body = text.getBytes(StandardCharsets.UTF_8);
+        ByteBuffer frame = header(type, 4 + 8 + body.length);
+        frame.putInt(sender.id);
+        frame.putLong(sequence);
+        frame.put(body);
+        return Frames.share(frame.array());
+    }
+
+    private static ByteBuffer header(byte type, int bodyLength) {
+        ByteBuffer frame = ByteBuffer.allocate(HEADER + bodyLength);
+        frame.putInt(1 + bodyLength);
+        frame.put(type);
+        return frame;
+    }
+}
@@ -0,0 +1,92 @@
+package org.example.Servidor;
+
+import java.nio.ByteBuffer;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.locks.ReentrantLock;
+
+// Estado del protocolo binario de una conexión: qué remitentes conoce ya el cliente.
+// Antes del primer CHAT o LEAVE de un remitente desconocido se le envía su JOIN de presentación.
+// La comprobación y el encolado van bajo un mismo lock para que, con varios broadcasts a la vez,
+// la presentación llegue siempre antes que el primer mensaje de ese remitente. Las tramas que
+// presentan a un remitente se encolan como imprescindibles: si la cola llena las descartara, el
+// servidor lo daría por conocido y el cliente mostraría sus mensajes sin nombre.
+// Si el cliente aceptó compresión, las tramas pasan por el FrameCompressor del servidor.
+final class BinarySession {
+
+    private static final int MAX_KNOWN_SENDERS = 4096; // Al superarlo se olvidan todos y se vuelven a presentar
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Set<Integer> knownSenders = new HashSet<>();
+    private final FrameCompressor compressor; // null si el cliente no pidió "deflate=1"
+
+    BinarySession(FrameCompressor compressor) {
+        this.compressor = compressor;
+    }
+
+    boolean isCompressed() {
+        return compressor != null;
+    }
+
+    void send(ClientConnection connection, ChatEvent event) {
+        lock.lock();
+        try {
+            boolean introduces = false; // El propio JOIN presenta al remitente
+            switch (event.kind) {
+                case JOIN -> introduces = remember(event.sender.id);
+                case CHAT, PRIVATE -> {
+                    if (remember(event.sender.id)) {
+                        connection.sendFrame(event.sender.binaryIntroduction(), true);
+                    }
+                }
+                case LEAVE -> {
+                    if (remember(event.sender.id)) {
+                        connection.sendFrame(event.sender.binaryIntroduction(), true);
+                    }
+                    knownSenders.remove(event.sender.id); // El cliente también lo olvida
+                }
+                case SYSTEM -> {
+                }
+            }
+            if (compressor == null) {
+                connection.sendFrame(event.binaryFrame(), introduces);
+            } else {
+                ByteBuffer frame = event.deflatedFrame(compressor);
+                connection.sendFrame(frame, introduces);
+                compressor.sent(event.binaryFrame(), frame);
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // Trama para este cliente solo (p. ej. una respuesta larga de /who), comprimida si procede
+    ByteBuffer encode(ByteBuffer frame) {
+        if (compressor == null) {
+            return frame;
+        }
+        ByteBuffer encoded = compressor.compress(frame);
+        compressor.sent(frame, encoded);
+        return encoded;
+    }
+
+    // Envía varias tramas seguidas (historial, lista de presencia); con compresión van en un solo flujo.
+    // Cada trozo del flujo depende de los anteriores y el cliente no puede saltarse uno, así que se
+    // encolan como imprescindibles: llegan todos. Sin compresión cada trama se puede descartar sola
+    void sendBurst(ClientConnection connection, List<ByteBuffer> frames) {
+        List<ByteBuffer> burst = compressor == null ? frames : compressor.compressBurst(frames);
+        boolean stream = burst != frames;
+        for (ByteBuffer frame : burst) {
+            connection.sendFrame(frame, stream);
+        }
+    }
+
+    // Devuelve true si el remitente no era conocido
+    private boolean remember(int senderId) {
+        if (knownSenders.size() >= MAX_KNOWN_SENDERS) {
+            knownSenders.clear();
+        }
+        return knownSenders.add(senderId);
+    }
+}
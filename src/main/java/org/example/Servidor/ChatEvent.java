@@ -0,0 +1,69 @@
+package org.example.Servidor;
+
+import java.nio.ByteBuffer;
+
+// Un mensaje a repartir entre varias conexiones. Se codifica como mucho una vez por protocolo
+// (texto, binario y binario comprimido), la primera vez que lo pide un destinatario de ese protocolo;
+// todas las conexiones comparten las tramas resultantes. Solo lo usa el hilo que hace el broadcast.
+final class ChatEvent {
+
+    enum Kind { JOIN, LEAVE, CHAT, SYSTEM, PRIVATE }
+
+    final Kind kind;
+    final ChatServerCore.ClientInfo sender; // null en SYSTEM
+    private final String senderName;
+    private final String senderColorHex;
+    private final String text;
+    long sequence = 0; // Secuencia en el MessageLog; se asigna antes de codificar la trama binaria
+    private ByteBuffer textFrame;
+    private ByteBuffer binaryFrame;
+    private ByteBuffer deflatedFrame; // La trama binaria si no compensa comprimirla
+
+    private ChatEvent(Kind kind, ChatServerCore.ClientInfo sender, String senderName, String senderColorHex, String text) {
+        this.kind = kind;
+        this.sender = sender;
+        this.senderName = senderName;
+        this.senderColorHex = senderColorHex;
+        this.text = text;
+    }
+
+    static ChatEvent of(Kind kind, ChatServerCore.ClientInfo sender, String text) {
+        return new ChatEvent(kind, sender, sender.name, sender.colorHex, text);
+    }
+
+    // Aviso con un remitente que no es un cliente (p. ej. "Servidor"): en texto se muestra
+    // como una línea de chat y en binario como un mensaje del sistema
+    static ChatEvent notice(String senderName, String senderColorHex, String text) {
+        return new ChatEvent(Kind.SYSTEM, null, senderName, senderColorHex, text);
+    }
+
+    ByteBuffer textFrame() {
+        if (textFrame == null) {
+            textFrame = kind == Kind.PRIVATE
+                    ? Frames.chatLine(senderColorHex, senderName + " (privado)", text)
+                    : Frames.chatLine(senderColorHex, senderName, text);
+        }
+        return textFrame;
+    }
+
+    ByteBuffer binaryFrame() {
+        if (binaryFrame == null) {
+            binaryFrame = switch (kind) {
+                case JOIN -> BinaryFrames.join(sender, sequence, text);
+                case LEAVE -> BinaryFrames.leave(sender, sequence, text);
+                case CHAT -> BinaryFrames.chat(sender, sequence, text);
+                case SYSTEM -> BinaryFrames.system(senderName + ": " + text);
+                case PRIVATE -> BinaryFrames.privateMessage(sender, text);
+            };
+        }
+        return binaryFrame;
+    }
+
+    // Trama binaria para los clientes que aceptan compresión
+    ByteBuffer deflatedFrame(FrameCompressor compressor) {
+        if (deflatedFrame == null) {
+            deflatedFrame = compressor.compress(binaryFrame());
+        }
+        return deflatedFrame;
+    }
+}
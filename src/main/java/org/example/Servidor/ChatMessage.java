@@ -0,0 +1,64 @@
+package org.example.Servidor;
+
+// Línea de chat que recorre el pipeline. Hay una por cliente y se reutiliza en cada línea que
+// envía, para que un mensaje normal no cree objetos por el camino. Las etapas pueden cambiar
+// text (moderación, enriquecimiento) o pedir que se cierre la conexión con quit.
+// Las etapas de fuera del paquete usan los métodos públicos; las del núcleo, los campos.
+public final class ChatMessage {
+
+    final ChatServerCore.ClientInfo sender;
+    ClientConnection connection;
+    String text;
+    boolean quit; // El cliente salió con /quit: se cierra la conexión al acabar el pipeline
+
+    ChatMessage(ChatServerCore.ClientInfo sender) {
+        this.sender = sender;
+    }
+
+    public String text() {
+        return text;
+    }
+
+    // Sustituye el texto que ven las etapas siguientes y, al final, la sala
+    public void setText(String text) {
+        this.text = text;
+    }
+
+    public String senderName() {
+        return sender.name;
+    }
+
+    public int senderId() {
+        return sender.id;
+    }
+
+    // Envía una línea solo al remitente (un aviso del filtro, p. ej.)
+    public void reply(String line) {
+        connection.send(line);
+    }
+
+    // Cierra la conexión del remitente al acabar el pipeline, como /quit
+    public void quit() {
+        quit = true;
+    }
+
+    // Prepara el mensaje para la siguiente línea de la conexión
+    ChatMessage reset(ClientConnection connection, String text) {
+        this.connection = connection;
+        this.text = text;
+        this.quit = false;
+        return this;
+    }
+
+    // ¿Es el comando dado, solo o seguido de un espacio? Sin distinguir mayúsculas y sin crear cadenas
+    public boolean isCommand(String command) {
+        int length = command.length();
+        return text.regionMatches(true, 0, command, 0, length)
+                && (text.length() == length || text.charAt(length) == ' ');
+    }
+
+    // Lo que sigue al comando, sin espacios alrededor ("" si no hay nada)
+    public String argument(String command) {
+        return text.length() > command.length() ? text.substring(command.length() + 1).trim() : "";
+    }
+}
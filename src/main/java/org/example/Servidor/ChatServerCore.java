@@ -1,49 +1,178 @@
 package org.example.Servidor;
+import javax.management.JMException;
+import javax.management.ObjectName;
 import java.io.*;
+import java.lang.management.ManagementFactory;
 import java.net.*;
-import java.awt.Color;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.GatheringByteChannel;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.file.Path;
+import java.security.GeneralSecurityException;
 import java.util.*;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
 import java.util.function.Consumer;
 
 public class ChatServerCore implements Runnable {
 
-    private static final int PORT = 12345;
-    private static ConcurrentHashMap<PrintWriter, ClientInfo> clientMap = new ConcurrentHashMap<>();
-    private ServerSocket serverSocket;
+    static final String WELCOME_PROMPT = "Bienvenido al Chat. Por favor, ingresa tu nombre:";
+    private static final int MAX_SINCE_REPLAY = 1000; // Tope de mensajes perdidos que se reenvían al reconectar
+    private static final int MAX_WHO_NAMES = 100;     // Nombres que lista /who como mucho
+
+    private final ConcurrentHashMap<ClientConnection, ClientInfo> clientMap = new ConcurrentHashMap<>(); // Uno por nodo: varios núcleos pueden convivir en una JVM
+    // Nombre en minúsculas -> conexión que lo usa. Un nombre queda reservado desde el saludo hasta
+    // que se anuncia la salida (también durante el plazo para reanudar la sesión)
+    private final ConcurrentHashMap<String, ClientConnection> names = new ConcurrentHashMap<>();
+    private final Set<ClientConnection> presenceSubscribers = ConcurrentHashMap.newKeySet(); // Clientes con "@hello presence=1"
+    // Id de remitente -> usuario que cuenta como conectado, también durante el plazo para reanudar su sesión.
+    // Los cambios, su aviso y la lista que recibe un suscriptor nuevo van bajo presenceLock, en un solo orden
+    private final Map<Integer, ClientInfo> presentUsers = new HashMap<>();
+    private final ReentrantLock presenceLock = new ReentrantLock();
+    private final ServerConfig config;
+    private volatile List<ServerSocketChannel> serverChannels = List.of(); // Varios solo con acceptThreads > 1 y SO_REUSEPORT
+    private NioEventLoop[] eventLoops;
+    private ExecutorService handlerExecutor; // null cuando se usa un hilo nuevo por conexión
+    private ExecutorService writerExecutor;  // Solo en modo POOL: los escritores no esperan tras lectores bloqueados
     private volatile boolean running = false; // Bandera para controlar el bucle del servidor
+    private volatile boolean draining = false; // Parada ordenada en curso: ya no se aceptan clientes
+    private final AtomicInteger activeConnections = new AtomicInteger();
+    private static final AtomicInteger nextClientId = new AtomicInteger(); // Ids de remitente del protocolo binario
     private Consumer<String> messageLogger; // Para enviar logs a la GUI
+    private final RoomRegistry rooms = new RoomRegistry();
+    private final ServerMetrics metrics;
+    private MetricsHttpServer metricsHttpServer;
+    private ObjectName metricsName; // null si el MBean no está registrado
+    private volatile MessageLog history; // null si no hay historDir configurado
+    private volatile ClusterRelay cluster; // null si el nodo no forma parte de un clúster
+    private final SessionRegistry sessions;
+    private final InboundLimiter.TokenBucket globalRateLimit; // null si no hay límite global
+    private volatile ScheduledThreadPoolExecutor handshakeTimer; // Plazos del saludo en modo bloqueante; se crea en cada arranque
+    private final MessagePipeline pipeline;
+    private volatile TlsContext tls; // null si las conexiones van en texto plano
+    private final FrameCompressor compressor; // null si compressMinBytes es 0
 
     // Clase interna para almacenar información del cliente
-    private static class ClientInfo {
+    static class ClientInfo {
+        final int id;
         String name;
         String colorHex;
+        final BinarySession binary; // null si el cliente usa el protocolo de texto
+        volatile RoomRegistry.Room room; // Sala actual del cliente
+        volatile SessionRegistry.Session session; // null para los clientes que no se saludan con "@hello"
+        volatile boolean quitting = false; // Salió con /quit: la salida se anuncia sin esperar a que vuelva
+        final ChatMessage message = new ChatMessage(this); // Se reutiliza en cada línea que envía el cliente
+        private volatile ByteBuffer binaryIntroduction;
+
+        ClientInfo(String name, String colorHex, BinarySession binary) {
+            this(nextClientId.incrementAndGet(), name, colorHex, binary);
+        }
 
-        public ClientInfo(String name, String colorHex) {
+        // Con el id de una sesión reanudada, para que los clientes binarios lo sigan reconociendo
+        ClientInfo(int id, String name, String colorHex, BinarySession binary) {
+            this.id = id;
             this.name = name;
             this.colorHex = colorHex;
+            this.binary = binary;
+        }
+
+        // JOIN sin texto que presenta a este remitente a un cliente binario (se codifica una vez)
+        ByteBuffer binaryIntroduction() {
+            ByteBuffer frame = binaryIntroduction;
+            if (frame == null) {
+                frame = BinaryFrames.join(this, 0, "");
+                binaryIntroduction = frame;
+            }
+            return frame;
         }
     }
 
     public ChatServerCore(Consumer<String> messageLogger) {
+        this(messageLogger, ServerConfig.fromSystemProperties());
+    }
+
+    public ChatServerCore(Consumer<String> messageLogger, ServerConfig config) {
         this.messageLogger = messageLogger;
+        this.config = config;
+        this.metrics = new ServerMetrics(this);
+        this.sessions = new SessionRegistry(config.getSessionGraceMillis());
+        this.globalRateLimit = config.getGlobalRateLimit() > 0
+                ? new InboundLimiter.TokenBucket(config.getGlobalRateLimit(), config.getGlobalBurst())
+                : null;
+        this.compressor = config.getCompressMinBytes() > 0 ? new FrameCompressor(config.getCompressMinBytes(), metrics) : null;
+        this.pipeline = config.isLogMessages()
+                ? new MessagePipeline(this::fanOut, this::logChatLine, this::handleCommand)
+                : new MessagePipeline(this::fanOut, this::handleCommand);
+    }
+
+    public ServerConfig getConfig() {
+        return config;
+    }
+
+    public ServerMetrics getMetrics() {
+        return metrics;
     }
 
     @Override
     public void run() { // El metodo run para el hilo del servidor
         running = true;
+        sessions.start();
+        if (config.getMode() == ServerConfig.Mode.NIO) {
+            runNio();
+        } else {
+            runBlocking();
+        }
+    }
+
+    // Modo clásico: un hilo por cliente con canales bloqueantes. Se usan SocketChannel en lugar
+    // de Socket para poder escribir las tramas compartidas con escrituras agrupadas (gathering)
+    // Con acceptThreads > 1 aceptan varios hilos a la vez: tras una caída reconectan miles de
+    // clientes y así el accept no espera a que se configure y arranque cada conexión anterior
+    private void runBlocking() {
         try {
-            serverSocket = new ServerSocket(PORT);
-            logMessage("Servidor de Chat iniciado en el puerto " + PORT);
+            loadTls();
+            List<ServerSocketChannel> channels = openServerChannels(config.getAcceptThreads());
+            startMetrics();
+            openHistory();
+            startCluster();
+            handlerExecutor = createHandlerExecutor();
+            writerExecutor = config.getHandlerExecutor() == ServerConfig.HandlerExecutor.POOL
+                    ? Executors.newFixedThreadPool(config.getPoolSize())
+                    : null;
+            handshakeTimer = createHandshakeTimer();
+            logMessage("Servidor de Chat iniciado en el puerto " + config.getPort()
+                    + " (ejecutor: " + config.getHandlerExecutor().name().toLowerCase()
+                    + ", hilos de accept: " + config.getAcceptThreads() + ")");
 
-            while (running) { // Ahora controlado por la bandera 'running'
-                Socket clientSocket = serverSocket.accept();
-                logMessage("Nuevo cliente conectado: " + clientSocket);
-                ClientHandler clientHandler = new ClientHandler(clientSocket);
-                new Thread(clientHandler).start();
+            for (int i = 1; i < config.getAcceptThreads(); i++) {
+                ServerSocketChannel channel = channels.get(i % channels.size());
+                Thread acceptThread = new Thread(() -> {
+                    try {
+                        acceptLoop(channel);
+                    } catch (ClosedChannelException e) {
+                        // Servidor detenido
+                    } catch (IOException e) {
+                        logMessage("Error al aceptar conexiones: " + e.getMessage());
+                    }
+                }, "chat-accept-" + i);
+                acceptThread.setDaemon(true);
+                acceptThread.start();
             }
-        } catch (SocketException se) {
-            if (running) { // Solo mostrar error si no fue una detención intencional
+            acceptLoop(channels.get(0)); // El hilo del servidor es el primer aceptador
+        } catch (ClosedChannelException se) {
+            if (draining) {
+                logMessage("Ya no se aceptan conexiones nuevas.");
+            } else if (running) { // Solo mostrar error si no fue una detención intencional
                 logMessage("Error de socket (probablemente al detener el servidor): " + se.getMessage());
             } else {
                 logMessage("Servidor detenido."); // Mensaje para parada limpia
@@ -51,7 +180,375 @@ public class ChatServerCore implements Runnable {
         } catch (IOException e) {
             logMessage("Error al iniciar o ejecutar el servidor: " + e.getMessage());
         } finally {
-            stopServer(); // Asegurarse de que el servidor esté detenido si el bucle termina
+            if (!draining) {
+                stopServer(); // Asegurarse de que el servidor esté detenido si el bucle termina
+            }
+        }
+    }
+
+    // Acepta conexiones hasta que se cierre el canal. Aquí no se registra nada en el log por
+    // conexión: en una avalancha de reconexiones el log frenaría el accept (para eso está metrics.accepted)
+    private void acceptLoop(ServerSocketChannel channel) throws IOException {
+        while (running) { // Ahora controlado por la bandera 'running'
+            SocketChannel clientChannel = channel.accept();
+            if (admitConnection(clientChannel)) {
+                startTask(new ClientHandler(clientChannel), false);
+            }
+        }
+    }
+
+    // Abre count canales de escucha con SO_REUSEPORT, para que el núcleo reparta las conexiones
+    // entre ellos; si el sistema no lo admite (o count es 1) abre uno solo, que comparten los aceptadores
+    private List<ServerSocketChannel> openServerChannels(int count) throws IOException {
+        List<ServerSocketChannel> channels = new ArrayList<>();
+        boolean reusePort = count > 1 && supportsReusePort();
+        try {
+            do {
+                channels.add(openServerChannel(reusePort));
+            } while (reusePort && channels.size() < count);
+        } catch (IOException e) {
+            for (ServerSocketChannel channel : channels) {
+                channel.close();
+            }
+            throw e;
+        }
+        serverChannels = List.copyOf(channels);
+        return serverChannels;
+    }
+
+    private static boolean supportsReusePort() {
+        try (ServerSocketChannel probe = ServerSocketChannel.open()) {
+            return probe.supportedOptions().contains(StandardSocketOptions.SO_REUSEPORT);
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    private void closeServerChannels() throws IOException {
+        IOException failure = null;
+        for (ServerSocketChannel channel : serverChannels) {
+            try {
+                channel.close();
+            } catch (IOException e) {
+                failure = e;
+            }
+        }
+        if (failure != null) {
+            throw failure;
+        }
+    }
+
+    // Abre un canal de escucha con la dirección, backlog y buffers configurados
+    private ServerSocketChannel openServerChannel(boolean reusePort) throws IOException {
+        ServerSocketChannel channel = ServerSocketChannel.open();
+        channel.setOption(StandardSocketOptions.SO_REUSEADDR, true);
+        if (reusePort) {
+            channel.setOption(StandardSocketOptions.SO_REUSEPORT, true);
+        }
+        if (config.getReceiveBufferSize() > 0) {
+            // Se fija antes de bind para que las conexiones aceptadas hereden la ventana TCP
+            channel.setOption(StandardSocketOptions.SO_RCVBUF, config.getReceiveBufferSize());
+        }
+        InetSocketAddress address = config.getBindAddress() != null
+                ? new InetSocketAddress(config.getBindAddress(), config.getPort())
+                : new InetSocketAddress(config.getPort());
+        channel.bind(address, config.getBacklog());
+        return channel;
+    }
+
+    // Aplica las opciones de socket a una conexión aceptada y comprueba el límite de conexiones;
+    // devuelve false si la conexión se rechazó (y ya está cerrada)
+    boolean admitConnection(SocketChannel channel) {
+        try {
+            channel.setOption(StandardSocketOptions.TCP_NODELAY, config.isTcpNoDelay());
+            if (config.getSendBufferSize() > 0) {
+                channel.setOption(StandardSocketOptions.SO_SNDBUF, config.getSendBufferSize());
+            }
+            if (config.getReceiveBufferSize() > 0) {
+                channel.setOption(StandardSocketOptions.SO_RCVBUF, config.getReceiveBufferSize());
+            }
+            int max = connectionLimit();
+            if (activeConnections.incrementAndGet() > max && max > 0) {
+                activeConnections.decrementAndGet();
+                metrics.rejected.increment();
+                logMessage("Conexión rechazada: se alcanzó el máximo de " + max + " conexiones.");
+                channel.write(Frames.line("Servidor lleno. Inténtalo más tarde.")); // El canal aún es bloqueante
+                channel.close();
+                return false;
+            }
+            metrics.accepted.increment();
+            metrics.acceptRate.increment();
+            return true;
+        } catch (IOException e) {
+            logMessage("Error al configurar la conexión: " + e.getMessage());
+            try {
+                channel.close();
+            } catch (IOException ignored) {
+                // Ignorar errores al cerrar
+            }
+            return false;
+        }
+    }
+
+    // maxConnections y, en modo POOL, el tamaño del pool: una conexión más esperaría en la cola
+    // del pool sin recibir nada hasta que se cerrara otra
+    private int connectionLimit() {
+        int max = config.getMaxConnections();
+        if (config.getMode() != ServerConfig.Mode.BLOCKING || config.getHandlerExecutor() != ServerConfig.HandlerExecutor.POOL) {
+            return max;
+        }
+        return max > 0 ? Math.min(max, config.getPoolSize()) : config.getPoolSize();
+    }
+
+    // Se llama una vez por cada conexión admitida cuando se cierra
+    void connectionClosed() {
+        activeConnections.decrementAndGet();
+    }
+
+    public int getActiveConnections() {
+        return activeConnections.get();
+    }
+
+    // Conexiones que ya completaron el saludo
+    Collection<ClientConnection> connections() {
+        return clientMap.keySet();
+    }
+
+    // Publica las métricas por JMX y, si hay un puerto configurado, por HTTP
+    private void startMetrics() {
+        if (config.isJmx()) {
+            try {
+                metricsName = new ObjectName("org.example.Servidor:type=ChatServer,port=" + config.getPort());
+                ManagementFactory.getPlatformMBeanServer().registerMBean(metrics, metricsName);
+            } catch (JMException e) {
+                logMessage("No se pudo registrar el MBean de métricas: " + e.getMessage());
+                metricsName = null;
+            }
+        }
+        if (config.getMetricsPort() > 0) {
+            metricsHttpServer = new MetricsHttpServer(metrics);
+            try {
+                metricsHttpServer.start(config.getMetricsPort());
+                logMessage("Métricas disponibles en http://127.0.0.1:" + config.getMetricsPort() + "/metrics");
+            } catch (IOException e) {
+                logMessage("No se pudo abrir el puerto de métricas: " + e.getMessage());
+                metricsHttpServer = null;
+            }
+        }
+    }
+
+    // Carga el certificado si hay un tlsKeyStore configurado. Si no se puede cargar, el servidor
+    // no arranca: no se sirve en texto plano a clientes que esperan TLS
+    private void loadTls() throws IOException {
+        if (config.getTlsKeyStore() == null) {
+            return;
+        }
+        try {
+            tls = TlsContext.load(config);
+            logMessage("TLS activado con el certificado de " + config.getTlsKeyStore() + ".");
+        } catch (GeneralSecurityException e) {
+            throw new IOException("No se pudo cargar el almacén de claves TLS: " + e.getMessage(), e);
+        }
+    }
+
+    // Canal TLS para una conexión aceptada, o null si el servidor no usa TLS
+    TlsChannel newTlsChannel(SocketChannel channel) throws IOException {
+        TlsContext context = tls;
+        return context != null ? new TlsChannel(channel, context.newEngine(), metrics) : null;
+    }
+
+    // Abre el historial persistente si está configurado; sin él el chat funciona igual pero sin reproducción
+    private void openHistory() {
+        if (config.getHistoryDir() == null) {
+            return;
+        }
+        try {
+            history = MessageLog.open(Path.of(config.getHistoryDir()), config.getHistorySegmentBytes(),
+                    config.getHistorySegments(), config.getHistoryReplay(), config.getHistoryFlushMillis());
+            logMessage("Historial en " + config.getHistoryDir() + " (última secuencia " + history.lastSequence() + ").");
+        } catch (IOException e) {
+            logMessage("No se pudo abrir el historial: " + e.getMessage());
+        }
+    }
+
+    private void closeHistory() {
+        MessageLog log = history;
+        history = null;
+        if (log != null) {
+            try {
+                log.close();
+            } catch (IOException e) {
+                logMessage("Error al cerrar el historial: " + e.getMessage());
+            }
+        }
+    }
+
+    // Une el nodo al clúster si hay un clusterPort configurado
+    private void startCluster() {
+        if (config.getClusterPort() <= 0) {
+            return;
+        }
+        ClusterRelay relay = new ClusterRelay(this, metrics, config);
+        try {
+            relay.start(config.getBindAddress());
+            cluster = relay;
+            logMessage("Nodo " + relay.nodeId() + " del clúster escuchando en el puerto " + config.getClusterPort()
+                    + " (pares: " + (config.getClusterPeers().isEmpty() ? "ninguno" : String.join(", ", config.getClusterPeers())) + ").");
+        } catch (IOException e) {
+            logMessage("No se pudo abrir el puerto del clúster: " + e.getMessage());
+            relay.stop();
+        }
+    }
+
+    private void stopCluster() {
+        ClusterRelay relay = cluster;
+        cluster = null;
+        if (relay != null) {
+            relay.stop();
+        }
+    }
+
+    private void stopMetrics() {
+        if (metricsHttpServer != null) {
+            metricsHttpServer.stop();
+            metricsHttpServer = null;
+        }
+        if (metricsName != null) {
+            try {
+                ManagementFactory.getPlatformMBeanServer().unregisterMBean(metricsName);
+            } catch (JMException e) {
+                logMessage("No se pudo dar de baja el MBean de métricas: " + e.getMessage());
+            }
+            metricsName = null;
+        }
+    }
+    // Crea el ejecutor de ClientHandler según la configuración
+    private ExecutorService createHandlerExecutor() {
+        switch (config.getHandlerExecutor()) {
+            case VIRTUAL:
+                return Executors.newThreadPerTaskExecutor(Thread.ofVirtual().name("chat-client-", 0).factory());
+            case POOL:
+                return Executors.newFixedThreadPool(config.getPoolSize());
+            default:
+                return null;
+        }
+    }
+
+    // Ejecuta una tarea de cliente (lector o escritor) con el ejecutor configurado. En modo POOL
+    // los escritores van a su propio pool del mismo tamaño: si compartieran pool con los lectores,
+    // bloqueados en readLine, el escritor de una conexión nueva no llegaría a arrancar
+    private void startTask(Runnable task, boolean writer) {
+        ExecutorService executor = writer && writerExecutor != null ? writerExecutor : handlerExecutor;
+        if (executor != null) {
+            executor.execute(task);
+        } else {
+            new Thread(task).start();
+        }
+    }
+
+    // Crea la cola de salida de una conexión nueva
+    OutboundQueue newOutboundQueue() {
+        ServerConfig.OverflowPolicy policy = config.getOverflowPolicy();
+        return new OutboundQueue(config.getOutboundQueueCapacity(), policy, metrics.overflows[policy.ordinal()]);
+    }
+
+    // Límite de mensajes entrantes de una conexión nueva
+    InboundLimiter newInboundLimiter() {
+        InboundLimiter.TokenBucket client = config.getClientRateLimit() > 0
+                ? new InboundLimiter.TokenBucket(config.getClientRateLimit(), config.getClientBurst())
+                : null;
+        return new InboundLimiter(client, globalRateLimit, metrics);
+    }
+
+    // Decodificador de líneas de una conexión nueva, con el límite de longitud configurado
+    LineDecoder newLineDecoder(ClientConnection connection) {
+        return new LineDecoder(config.getMaxLineLength(), () -> {
+            metrics.linesTooLong.increment();
+            connection.send("Mensaje demasiado largo (máximo " + config.getMaxLineLength() + " bytes); se ha descartado.");
+        });
+    }
+
+    private static ScheduledThreadPoolExecutor createHandshakeTimer() {
+        ScheduledThreadPoolExecutor timer = new ScheduledThreadPoolExecutor(1, task -> {
+            Thread thread = new Thread(task, "chat-handshake-timeout");
+            thread.setDaemon(true);
+            return thread;
+        });
+        timer.setRemoveOnCancelPolicy(true);
+        return timer;
+    }
+
+    // Cierra la conexión si no completa el saludo en handshakeTimeoutMillis; devuelve null si no hay plazo.
+    // Solo el modo bloqueante: los bucles NIO vigilan el plazo de sus conexiones sin otro hilo
+    private ScheduledFuture<?> scheduleHandshakeTimeout(ClientConnection connection) {
+        long timeout = config.getHandshakeTimeoutMillis();
+        ScheduledThreadPoolExecutor timer = handshakeTimer;
+        if (timeout <= 0 || timer == null) {
+            return null;
+        }
+        try {
+            return timer.schedule(() -> {
+                if (connection.info() == null) {
+                    handshakeTimedOut(connection);
+                }
+            }, timeout, TimeUnit.MILLISECONDS);
+        } catch (RejectedExecutionException e) {
+            return null; // El servidor se está deteniendo
+        }
+    }
+
+    // La conexión no envió su nombre a tiempo
+    void handshakeTimedOut(ClientConnection connection) {
+        metrics.handshakeTimeouts.increment();
+        connection.close();
+    }
+
+    // Veces que se ha aplicado una política de desbordamiento de colas de salida
+    public long getOverflowCount(ServerConfig.OverflowPolicy policy) {
+        return metrics.overflows[policy.ordinal()].sum();
+    }
+
+    // Modo no bloqueante: un bucle de eventos por hilo de I/O; los acceptThreads primeros también aceptan conexiones
+    private void runNio() {
+        Thread[] loopThreads = new Thread[0];
+        try {
+            int acceptors = Math.min(config.getAcceptThreads(), config.getIoThreads());
+            loadTls();
+            List<ServerSocketChannel> channels = openServerChannels(acceptors);
+            startMetrics();
+            openHistory();
+            startCluster();
+
+            eventLoops = new NioEventLoop[config.getIoThreads()];
+            for (int i = 0; i < eventLoops.length; i++) {
+                eventLoops[i] = new NioEventLoop(this);
+            }
+            for (int i = 0; i < acceptors; i++) {
+                eventLoops[i].acceptFrom(channels.get(i % channels.size()), eventLoops, i);
+            }
+
+            loopThreads = new Thread[eventLoops.length - 1];
+            for (int i = 1; i < eventLoops.length; i++) {
+                loopThreads[i - 1] = new Thread(eventLoops[i], "chat-io-" + i);
+                loopThreads[i - 1].start();
+            }
+            logMessage("Servidor de Chat (NIO, " + eventLoops.length + " hilos de I/O, " + acceptors
+                    + " aceptando) iniciado en el puerto " + config.getPort());
+
+            eventLoops[0].run(); // El hilo del servidor atiende el primer bucle hasta que se detenga
+        } catch (IOException e) {
+            logMessage("Error al iniciar o ejecutar el servidor: " + e.getMessage());
+        } finally {
+            stopServer();
+            for (Thread loopThread : loopThreads) {
+                try {
+                    if (loopThread != null) {
+                        loopThread.join(1000);
+                    }
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
         }
     }
 
@@ -60,22 +557,51 @@ public class ChatServerCore implements Runnable {
         if (!running) return; // Ya está detenido
         running = false;
         try {
-            if (serverSocket != null && !serverSocket.isClosed()) {
-                serverSocket.close(); // Esto lanzará una SocketException en el accept()
+            if (!serverChannels.isEmpty() && serverChannels.get(0).isOpen()) {
+                closeServerChannels(); // Esto lanzará una ClosedChannelException en el accept()
                 logMessage("Intentando detener el servidor...");
             }
         } catch (IOException e) {
             logMessage("Error al cerrar el socket del servidor: " + e.getMessage());
         } finally {
+            if (eventLoops != null) {
+                for (NioEventLoop loop : eventLoops) {
+                    loop.stop();
+                }
+            }
+            if (handlerExecutor != null) {
+                handlerExecutor.shutdown(); // Los handlers terminan al cerrarse sus sockets
+            }
+            if (writerExecutor != null) {
+                writerExecutor.shutdown();
+                writerExecutor = null;
+            }
+            stopCluster();
+            sessions.shutdown();
+            ScheduledThreadPoolExecutor timer = handshakeTimer;
+            if (timer != null) {
+                timer.shutdownNow(); // Un nuevo arranque (p. ej. desde la GUI) crea otro
+                handshakeTimer = null;
+            }
             // Desconectar a todos los clientes activos
-            for (PrintWriter writer : clientMap.keySet()) {
+            for (ClientConnection connection : clientMap.keySet()) {
                 try {
-                    writer.close(); // Esto notificará a los clientes y cerrará sus streams
+                    connection.close(); // Esto notificará a los clientes y cerrará sus streams
                 } catch (Exception e) {
-                    // Ignorar errores al cerrar writers
+                    // Ignorar errores al cerrar conexiones
                 }
             }
             clientMap.clear(); // Limpiar el mapa de clientes
+            names.clear();
+            presenceSubscribers.clear();
+            presenceLock.lock();
+            try {
+                presentUsers.clear();
+            } finally {
+                presenceLock.unlock();
+            }
+            stopMetrics();
+            closeHistory();
             logMessage("Todos los clientes desconectados.");
             logMessage("Servidor detenido exitosamente.");
         }
@@ -85,17 +611,471 @@ public class ChatServerCore implements Runnable {
         return running;
     }
 
+    // Parada ordenada (p. ej. al recibir SIGTERM): deja de aceptar conexiones, espera a que
+    // las colas de salida se vacíen, como mucho timeoutMillis, y después cierra los sockets
+    public void shutdownGracefully(long timeoutMillis) {
+        if (!running || draining) return;
+        draining = true;
+        logMessage("Deteniendo el servidor: enviando los mensajes pendientes...");
+        try {
+            closeServerChannels();
+        } catch (IOException e) {
+            logMessage("Error al cerrar el socket del servidor: " + e.getMessage());
+        }
+        broadcastMessage("Servidor", "#808080", "El servidor se va a detener.");
+
+        long deadline = System.nanoTime() + timeoutMillis * 1_000_000L;
+        while (hasPendingOutbound() && System.nanoTime() < deadline) {
+            try {
+                Thread.sleep(10);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            }
+        }
+        if (hasPendingOutbound()) {
+            logMessage("Tiempo de espera agotado; se descartan los mensajes pendientes.");
+        }
+        stopServer();
+    }
+
+    private boolean hasPendingOutbound() {
+        for (ClientConnection connection : clientMap.keySet()) {
+            if (connection.pendingFrames() > 0) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+
+    // Metodo para enviar un mensaje a todos los clientes conectados a este nodo.
+    // Solo encola en la cola de salida de cada cliente: no espera a ningún socket.
+    public void broadcastMessage(String senderName, String senderColorHex, String message) {
+        ChatEvent event = ChatEvent.notice(senderName, senderColorHex, message); // Se codifica una sola vez por protocolo
+        for (ClientConnection connection : clientMap.keySet()) {
+            connection.sendEvent(event);
+        }
+    }
+
+    // Envía un evento de un cliente local a los miembros de su sala, aquí y en el resto del clúster
+    void broadcastToRoom(RoomRegistry.Room room, ChatEvent.Kind kind, ClientInfo sender, String message) {
+        publish(room, kind, sender, message, false);
+    }
+
+    // senderGone indica que es el último mensaje del remitente, para que los otros nodos lo olviden
+    private void publish(RoomRegistry.Room room, ChatEvent.Kind kind, ClientInfo sender, String message, boolean senderGone) {
+        Lock lock = rooms.publishLock(room.name).readLock();
+        lock.lock();
+        try {
+            deliverToRoom(room.name, room, kind, sender, message);
+        } finally {
+            lock.unlock();
+        }
+        ClusterRelay relay = cluster;
+        if (relay != null) {
+            relay.publish(room.name, kind, sender, message, senderGone);
+        }
+    }
+
+    // Entrega un mensaje que llega de otro nodo del clúster; no se vuelve a reenviar
+    void deliverRemote(String roomName, ChatEvent.Kind kind, ClientInfo sender, String message) {
+        Lock lock = rooms.publishLock(roomName).readLock();
+        lock.lock();
+        try {
+            deliverToRoom(roomName, rooms.find(roomName), kind, sender, message);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // Guarda el evento en el historial y lo encola a los miembros locales de la sala (room es null si no hay ninguno).
+    // Se llama con el cerrojo de publicación de la sala tomado
+    private void deliverToRoom(String roomName, RoomRegistry.Room room, ChatEvent.Kind kind, ClientInfo sender, String message) {
+        long start = System.nanoTime();
+        ChatEvent event = ChatEvent.of(kind, sender, message);
+        MessageLog log = history;
+        if (log != null) {
+            event.sequence = log.append(roomName, event.textFrame());
+        }
+        if (room != null) {
+            for (ClientConnection connection : room.members) {
+                connection.sendEvent(event);
+            }
+        }
+        metrics.fanoutNanos.record(System.nanoTime() - start);
+        metrics.broadcasts.increment();
+    }
+
+    // Completa el saludo de un cliente con el nombre recibido y lo registra en el chat.
+    // La primera línea puede ser "@hello proto=bin1 <nombre>" para pedir el protocolo binario;
+    // la respuesta "@hello proto=... session=<token>" va en texto y marca el punto a partir del cual
+    // cambia el protocolo. Con "session=<token>" el cliente reanuda una sesión (ver SessionRegistry).
+    // Un cliente binario puede pedir tramas comprimidas con "deflate=1"; la respuesta lo confirma.
+    ClientInfo registerClient(ClientConnection connection, String clientName) {
+        boolean hello = HelloLine.isHello(clientName);
+        BinarySession binary = null;
+        boolean presence = false; // Solo los clientes binarios pueden recibir las tramas PRESENCE
+        long since = -1; // Última secuencia que vio el cliente si viene de una reconexión
+        String roomName = RoomRegistry.DEFAULT_ROOM;
+        if (hello) {
+            HelloLine line = HelloLine.parse(clientName);
+            if (BinaryFrames.PROTOCOL.equals(line.option("proto"))) {
+                binary = new BinarySession("1".equals(line.option("deflate")) ? compressor : null);
+            }
+            presence = binary != null && "1".equals(line.option("presence"));
+            since = parseSequence(line.option("since"));
+            String room = line.option("room"); // Sala en la que estaba, si reconecta sin sesión (p. ej. tras reiniciar el servidor)
+            if (room != null && RoomRegistry.isValidName(room)) {
+                roomName = room;
+            }
+            String token = line.option("session");
+            SessionRegistry.Session session = token != null && sessions.isEnabled() ? sessions.resume(token, connection) : null;
+            if (session != null) {
+                return resumeClient(connection, session, binary, presence, since);
+            }
+            clientName = line.name;
+        }
+        if (clientName == null || clientName.trim().isEmpty()) {
+            clientName = "Anónimo-" + UUID.randomUUID().toString().substring(0, 4);
+        }
+        String requestedName = clientName;
+        clientName = reserveName(requestedName, connection);
+        String clientColorHex = getRandomHexColor();
+
+        ClientInfo info = new ClientInfo(clientName, clientColorHex, binary);
+        if (hello) {
+            String ack = helloAck(binary);
+            if (sessions.isEnabled()) {
+                info.session = sessions.open(info, connection);
+                info.session.roomName = roomName;
+                ack += " session=" + info.session.token;
+            }
+            connection.send(ack); // Aún en texto: la conexión no tiene info
+        }
+        connection.setInfo(info);
+        connection.send("¡Bienvenido, " + clientName + "!");
+        if (!clientName.equals(requestedName)) {
+            connection.send("El nombre '" + requestedName + "' ya está en uso; te llamarás '" + clientName + "'.");
+        }
+        logMessage("Cliente '" + clientName + "' conectado con color " + clientColorHex
+                + (binary != null ? " (protocolo " + BinaryFrames.PROTOCOL + (binary.isCompressed() ? ", comprimido)." : ").") : "."));
+
+        clientMap.put(connection, info);
+        publishPresence(info, true);
+        if (presence) {
+            subscribePresence(connection, info);
+        }
+
+        info.room = enterRoom(connection, info, roomName, since);
+        if (!RoomRegistry.DEFAULT_ROOM.equals(roomName)) {
+            connection.send("Sigues en la sala " + roomName + ".");
+        }
+        broadcastToRoom(info.room, ChatEvent.Kind.JOIN, info, "se ha unido al chat.");
+        return info;
+    }
+
+    // Vuelve a registrar a un cliente que reanuda su sesión: conserva nombre, color, id y sala,
+    // y no se anuncia en la sala porque nunca se llegó a anunciar su salida
+    private ClientInfo resumeClient(ClientConnection connection, SessionRegistry.Session session,
+                                    BinarySession binary, boolean presence, long since) {
+        ClientInfo info = new ClientInfo(session.senderId, session.name, session.colorHex, binary);
+        info.session = session;
+        connection.send(helloAck(binary) + " session=" + session.token);
+        connection.setInfo(info);
+        connection.send("¡Bienvenido de nuevo, " + info.name + "!");
+        logMessage("Cliente '" + info.name + "' reanudó su sesión.");
+
+        String roomName = session.roomName;
+        names.put(nameKey(info.name), connection); // El nombre seguía reservado para la sesión
+        clientMap.put(connection, info);
+        publishPresence(info, true); // Sustituye a la ClientInfo anterior, la que se dará de baja al salir
+        if (presence) {
+            subscribePresence(connection, info);
+        }
+        info.room = enterRoom(connection, info, roomName, since);
+        if (!RoomRegistry.DEFAULT_ROOM.equals(roomName)) {
+            connection.send("Sigues en la sala " + roomName + ".");
+        }
+        return info;
+    }
+
+    // Reserva el nombre pedido o, si ya está en uso (sin distinguir mayúsculas), el primero libre de nombre2, nombre3...
+    private String reserveName(String requested, ClientConnection connection) {
+        String name = requested;
+        for (int suffix = 2; names.putIfAbsent(nameKey(name), connection) != null; suffix++) {
+            name = requested + suffix;
+        }
+        return name;
+    }
+
+    private static String nameKey(String name) {
+        return name.toLowerCase(Locale.ROOT);
+    }
+
+    // Anota que un usuario se ha conectado o desconectado y avisa a los suscritos (una trama compartida).
+    // Volver a avisar de que está conectado (al reanudar la sesión) no cambia nada: el cliente indexa por id
+    private void publishPresence(ClientInfo info, boolean online) {
+        presenceLock.lock();
+        try {
+            if (online) {
+                presentUsers.put(info.id, info);
+            } else if (!presentUsers.remove(info.id, info)) {
+                return; // Ya se avisó de su salida (p. ej. al detener el servidor)
+            }
+            if (presenceSubscribers.isEmpty()) {
+                return;
+            }
+            ByteBuffer frame = BinaryFrames.presence(info, online);
+            for (ClientConnection subscriber : presenceSubscribers) {
+                subscriber.sendFrame(frame);
+            }
+        } finally {
+            presenceLock.unlock();
+        }
+    }
+
+    // Suscribe a un cliente a los cambios de presencia y le envía la lista actual. Con presenceLock, ningún
+    // aviso se cruza con la lista: los anteriores ya están en ella y los siguientes llegan después
+    private void subscribePresence(ClientConnection connection, ClientInfo info) {
+        presenceLock.lock();
+        try {
+            presenceSubscribers.add(connection);
+            List<ByteBuffer> frames = new ArrayList<>(presentUsers.size());
+            for (ClientInfo user : presentUsers.values()) {
+                frames.add(BinaryFrames.presence(user, true));
+            }
+            info.binary.sendBurst(connection, frames);
+        } finally {
+            presenceLock.unlock();
+        }
+    }
+
+    private static String helloAck(BinarySession binary) {
+        if (binary == null) {
+            return HelloLine.PREFIX.trim() + " proto=text";
+        }
+        return HelloLine.PREFIX.trim() + " proto=" + BinaryFrames.PROTOCOL + (binary.isCompressed() ? " deflate=1" : "");
+    }
+
+    // Procesa una línea recibida de un cliente ya registrado; devuelve false si el cliente pidió salir
+    boolean handleClientLine(ClientConnection connection, ClientInfo info, String line) {
+        metrics.messagesIn.increment();
+        ChatMessage message = info.message.reset(connection, line);
+        pipeline.process(message);
+        if (message.quit) {
+            info.quitting = true;
+            return false;
+        }
+        return true;
+    }
+
+    // Añade una etapa al pipeline de mensajes, antes del envío a la sala (filtros, moderación...)
+    public void addStage(MessageStage stage) {
+        pipeline.add(stage);
+    }
+
+    public boolean removeStage(MessageStage stage) {
+        return pipeline.remove(stage);
+    }
+
+    // Etapa del núcleo: registra la línea en el log del servidor (se desactiva con logMessages=false)
+    private boolean logChatLine(ChatMessage message) {
+        logMessage("Mensaje de " + message.sender.name + ": " + message.text);
+        return true;
+    }
+
+    // Etapa del núcleo: atiende los comandos. Una línea que no empieza por '/' pasa sin más comprobaciones;
+    // un comando desconocido se envía a la sala como cualquier otro mensaje
+    private boolean handleCommand(ChatMessage message) {
+        String text = message.text;
+        if (text.isEmpty() || text.charAt(0) != '/') {
+            return true;
+        }
+        ClientConnection connection = message.connection;
+        ClientInfo info = message.sender;
+        if (message.isCommand("/quit")) {
+            message.quit = true;
+        } else if (message.isCommand("/join")) {
+            String room = message.argument("/join");
+            if (room.isEmpty()) {
+                connection.send("Uso: /join <sala>");
+            } else {
+                changeRoom(connection, info, room);
+            }
+        } else if (message.isCommand("/leave")) {
+            if (RoomRegistry.DEFAULT_ROOM.equals(info.room.name)) {
+                connection.send("Ya estás en la sala " + RoomRegistry.DEFAULT_ROOM + ".");
+            } else {
+                changeRoom(connection, info, RoomRegistry.DEFAULT_ROOM);
+            }
+        } else if (message.isCommand("/rooms")) {
+            connection.send("Salas: " + String.join(", ", rooms.describe()));
+        } else if (message.isCommand("/msg")) {
+            String rest = message.argument("/msg");
+            if (rest.isEmpty()) {
+                connection.send("Uso: /msg <nombre> <mensaje>");
+            } else {
+                sendPrivateMessage(connection, info, rest);
+            }
+        } else if (message.isCommand("/who")) {
+            connection.send(describeUsers());
+        } else {
+            return true;
+        }
+        return false;
+    }
+
+    // Última etapa: envía el mensaje a la sala del remitente
+    private boolean fanOut(ChatMessage message) {
+        broadcastToRoom(message.sender.room, ChatEvent.Kind.CHAT, message.sender, message.text);
+        return true;
+    }
 
-    // Metodo para enviar un mensaje a todos los clientes conectados
-    public static void broadcastMessage(String senderName, String senderColorHex, String message) {
-        String formattedMessage = senderColorHex + "|" + senderName + ": " + message;
-        for (PrintWriter writer : clientMap.keySet()) {
-            writer.println(formattedMessage);
+    // "/msg <nombre> <mensaje>". Los nombres pueden tener espacios: se busca el prefijo más largo
+    // que sea un nombre registrado, con una consulta al índice por cada espacio
+    private void sendPrivateMessage(ClientConnection connection, ClientInfo info, String rest) {
+        ClientConnection target = null;
+        String text = null;
+        for (int space = rest.lastIndexOf(' '); space > 0 && target == null; space = rest.lastIndexOf(' ', space - 1)) {
+            target = names.get(nameKey(rest.substring(0, space)));
+            text = rest.substring(space + 1).trim();
         }
+        if (target == null || text.isEmpty()) {
+            int space = rest.indexOf(' ');
+            connection.send(space < 0 ? "Uso: /msg <nombre> <mensaje>"
+                    : "No hay ningún usuario llamado " + rest.substring(0, space) + ".");
+            return;
+        }
+        ClientInfo recipient = clientMap.get(target);
+        if (recipient == null) {
+            connection.send("Ese usuario no está conectado ahora mismo."); // Dentro del plazo para reanudar su sesión
+            return;
+        }
+        target.sendEvent(ChatEvent.of(ChatEvent.Kind.PRIVATE, info, text));
+        connection.send("(privado a " + recipient.name + "): " + text);
+    }
+
+    // Respuesta a /who: usuarios conectados a este nodo, por orden alfabético
+    private String describeUsers() {
+        List<String> users = new ArrayList<>();
+        for (ClientInfo user : clientMap.values()) {
+            RoomRegistry.Room room = user.room; // null durante un instante al registrarse
+            users.add(room != null ? user.name + " (" + room.name + ")" : user.name);
+        }
+        users.sort(String.CASE_INSENSITIVE_ORDER);
+        StringBuilder text = new StringBuilder("Conectados (").append(users.size()).append("): ");
+        text.append(String.join(", ", users.subList(0, Math.min(users.size(), MAX_WHO_NAMES))));
+        if (users.size() > MAX_WHO_NAMES) {
+            text.append(" y ").append(users.size() - MAX_WHO_NAMES).append(" más");
+        }
+        return text.toString();
+    }
+
+    // Mueve al cliente a otra sala avisando a los miembros de ambas
+    private void changeRoom(ClientConnection connection, ClientInfo info, String roomName) {
+        if (!RoomRegistry.isValidName(roomName)) {
+            connection.send("Nombre de sala no válido (máximo " + RoomRegistry.MAX_ROOM_NAME_LENGTH + " caracteres, sin espacios).");
+            return;
+        }
+        RoomRegistry.Room previous = info.room;
+        if (previous.name.equals(roomName)) {
+            connection.send("Ya estás en la sala " + roomName + ".");
+            return;
+        }
+        rooms.leave(previous, connection);
+        broadcastToRoom(previous, ChatEvent.Kind.LEAVE, info, "se ha ido a la sala " + roomName + ".");
+        info.room = enterRoom(connection, info, roomName, -1);
+        if (info.session != null) {
+            info.session.roomName = roomName;
+        }
+        connection.send("Ahora estás en la sala " + roomName + ".");
+        broadcastToRoom(info.room, ChatEvent.Kind.JOIN, info, "se ha unido a la sala.");
+    }
+
+    // Envía al cliente los mensajes de la sala que se perdió (since >= 0) o los últimos, y lo añade a la sala.
+    // Con el cerrojo de publicación de la sala en exclusiva: cada mensaje queda en el historial antes de la
+    // entrada y llega con él, o se reparte después y llega en directo; nunca en ambos ni en ninguno
+    private RoomRegistry.Room enterRoom(ClientConnection connection, ClientInfo info, String roomName, long since) {
+        Lock lock = rooms.publishLock(roomName).writeLock();
+        lock.lock();
+        try {
+            replayHistory(connection, info, roomName, since);
+            return rooms.join(roomName, connection);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // Las tramas de texto son vistas del segmento proyectado, sin copia
+    private void replayHistory(ClientConnection connection, ClientInfo info, String roomName, long since) {
+        MessageLog log = history;
+        if (log == null) {
+            return;
+        }
+        List<MessageLog.Entry> entries = since >= 0 ? log.since(roomName, since, MAX_SINCE_REPLAY) : log.tail(roomName);
+        if (info.binary == null) {
+            for (MessageLog.Entry entry : entries) {
+                connection.sendFrame(entry.payload());
+            }
+            return;
+        }
+        List<ByteBuffer> frames = new ArrayList<>(entries.size());
+        for (MessageLog.Entry entry : entries) {
+            frames.add(BinaryFrames.history(entry.sequence(), entry.payload()));
+        }
+        info.binary.sendBurst(connection, frames);
+    }
+
+    private static long parseSequence(String value) {
+        if (value == null) {
+            return -1;
+        }
+        try {
+            return Math.max(0, Long.parseLong(value));
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    // Elimina a un cliente desconectado y avisa al resto. Si tiene sesión y no salió con /quit,
+    // el aviso se aplaza por si reanuda la sesión; si ya la reanudó en otra conexión, no se avisa
+    void unregisterClient(ClientConnection connection, ClientInfo info) {
+        logMessage("Cliente '" + info.name + "' desconectado.");
+        ClientInfo disconnectedClientInfo = clientMap.remove(connection); // Obtener info antes de eliminar
+        presenceSubscribers.remove(connection);
+        if (disconnectedClientInfo != null) {
+            RoomRegistry.Room room = disconnectedClientInfo.room;
+            rooms.leave(room, connection);
+            Runnable leave = () -> {
+                names.remove(nameKey(disconnectedClientInfo.name), connection); // No hace nada si otra conexión reanudó la sesión
+                publish(room, ChatEvent.Kind.LEAVE, disconnectedClientInfo, "ha abandonado el chat.", true);
+                publishPresence(disconnectedClientInfo, false);
+            };
+            SessionRegistry.Session session = disconnectedClientInfo.session;
+            if (session == null) {
+                leave.run();
+            } else if (disconnectedClientInfo.quitting) {
+                if (sessions.close(session, connection)) {
+                    leave.run();
+                }
+            } else {
+                sessions.detach(session, connection, leave);
+            }
+        } else {
+            // Caso para un cliente que se desconecta antes de establecer su nombre
+            broadcastMessage("Un cliente desconocido", "#808080", "ha abandonado el chat.");
+        }
+    }
+
+    // Una conexión cuya cola de salida desbordó con la política DISCONNECT; la conexión se cierra a continuación
+    void slowConsumerDisconnected(ClientInfo info) {
+        metrics.slowConsumerDisconnects.increment();
+        logMessage("Cliente '" + (info != null ? info.name : "Desconocido") + "' desconectado por no consumir sus mensajes.");
     }
 
     // Metodo para generar un color hexadecimal aleatorio
-    private static String getRandomHexColor() {
+    static String getRandomHexColor() {
         Random rand = new Random();
         int r = rand.nextInt(151) + 50;
         int g = rand.nextInt(151) + 50;
@@ -104,7 +1084,7 @@ public class ChatServerCore implements Runnable {
     }
 
     // Metodo para loguear mensajes a la GUI
-    private void logMessage(String message) {
+    void logMessage(String message) {
         if (messageLogger != null) {
             messageLogger.accept(message);
         } else {
@@ -112,66 +1092,131 @@ public class ChatServerCore implements Runnable {
         }
     }
 
-    private class ClientHandler implements Runnable {
-        private Socket clientSocket;
-        private PrintWriter writer;
-        private BufferedReader reader;
-        private String clientName;
-        private String clientColorHex;
+    // Handler del modo bloqueante. No usa PrintWriter ni BufferedReader: sus monitores
+    // synchronized fijarían el hilo virtual a su portador durante la escritura.
+    // Las escrituras salen de la cola de salida en una tarea aparte (writeLoop).
+    private class ClientHandler implements Runnable, ClientConnection {
+        private static final int WRITE_BATCH = 16;
+
+        private SocketChannel clientChannel;
+        private volatile TlsChannel tls; // null sin TLS
+        private final OutboundQueue outbound = newOutboundQueue();
+        private volatile ClientInfo info;
+        private volatile int inFlight = 0; // Tramas ya sacadas de la cola pero sin escribir del todo
+        private final long acceptedAt = System.nanoTime();
 
-        public ClientHandler(Socket socket) {
-            this.clientSocket = socket;
+        public ClientHandler(SocketChannel channel) {
+            this.clientChannel = channel;
         }
 
         @Override
-        public void run() {
-            try {
-                reader = new BufferedReader(new InputStreamReader(clientSocket.getInputStream()));
-                writer = new PrintWriter(clientSocket.getOutputStream(), true);
+        public void sendFrame(ByteBuffer frame, boolean required) {
+            if (!outbound.offer(frame.duplicate(), required)) {
+                slowConsumerDisconnected(info);
+                close(); // El lector detectará el cierre y dará de baja al cliente
+            }
+        }
+
+        @Override
+        public ClientInfo info() {
+            return info;
+        }
+
+        @Override
+        public void setInfo(ClientInfo info) {
+            this.info = info;
+        }
 
-                clientColorHex = getRandomHexColor();
+        @Override
+        public int pendingFrames() {
+            return outbound.size() + inFlight;
+        }
 
-                writer.println("Bienvenido al Chat. Por favor, ingresa tu nombre:");
-                clientName = reader.readLine();
-                if (clientName == null || clientName.trim().isEmpty()) {
-                    clientName = "Anónimo-" + UUID.randomUUID().toString().substring(0, 4);
+        @Override
+        public void close() {
+            outbound.close();
+            try {
+                TlsChannel secure = tls;
+                if (secure != null) {
+                    secure.close(); // Cierra también el socket y despierta al escritor si esperaba el handshake
+                } else if (clientChannel != null && clientChannel.isOpen()) {
+                    clientChannel.close(); // Esto notificará al cliente y cerrará sus streams
                 }
+            } catch (IOException e) {
+                logMessage("Error al cerrar el socket del cliente: " + e.getMessage());
+            }
+        }
 
-                writer.println("¡Bienvenido, " + clientName + "!");
-                logMessage("Cliente '" + clientName + "' conectado con color " + clientColorHex + ".");
+        // Vacía la cola de salida hacia el socket hasta que la conexión se cierre,
+        // escribiendo todas las tramas pendientes con una sola llamada cuando es posible.
+        // Si el cliente está ocioso la trama sale enseguida; en ráfagas se espera como mucho
+        // coalesceMicros a juntar un lote completo (menos llamadas al sistema y segmentos TCP)
+        private void writeLoop() {
+            ByteBuffer[] batch = new ByteBuffer[WRITE_BATCH];
+            long coalesceNanos = config.getCoalesceMicros() * 1000;
+            GatheringByteChannel out = tls != null ? tls : clientChannel;
+            try {
+                int count;
+                while ((count = outbound.takeBatch(batch, coalesceNanos)) > 0) {
+                    inFlight = count;
+                    int offset = 0;
+                    while (offset < count) {
+                        metrics.bytesOut.add(out.write(batch, offset, count - offset));
+                        metrics.socketWrites.increment();
+                        while (offset < count && !batch[offset].hasRemaining()) {
+                            batch[offset++] = null;
+                        }
+                    }
+                    metrics.messagesOut.add(count);
+                    inFlight = 0;
+                }
+            } catch (IOException e) {
+                close(); // El lector detectará el cierre y dará de baja al cliente
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                close();
+            }
+        }
 
-                clientMap.put(writer, new ClientInfo(clientName, clientColorHex));
+        @Override
+        public void run() {
+            try {
+                tls = newTlsChannel(clientChannel); // El handshake lo hace la primera lectura, en este hilo
+                LineReader reader = new LineReader(tls != null ? tls : clientChannel, metrics.bytesIn, newLineDecoder(this));
+                InboundLimiter limiter = newInboundLimiter();
+                startTask(this::writeLoop, true);
 
-                broadcastMessage(clientName, clientColorHex, "se ha unido al chat.");
+                ScheduledFuture<?> handshakeTimeout = scheduleHandshakeTimeout(this);
+                send(WELCOME_PROMPT);
+                String firstLine = reader.readLine();
+                if (handshakeTimeout != null) {
+                    handshakeTimeout.cancel(false);
+                }
+                if (firstLine == null) {
+                    return; // Se desconectó sin enviar el nombre: no se anuncia ni entrada ni salida
+                }
+                info = registerClient(this, firstLine);
+                metrics.handshakeNanos.record(System.nanoTime() - acceptedAt);
 
                 String message;
                 while ((message = reader.readLine()) != null) {
-                    logMessage("Mensaje de " + clientName + ": " + message);
-                    if (message.equalsIgnoreCase("/quit")) {
+                    limiter.await(); // Sin token no se lee más del socket
+                    if (!handleClientLine(this, info, message)) {
                         break;
                     }
-                    broadcastMessage(clientName, clientColorHex, message);
                 }
             } catch (IOException e) {
-                logMessage("Error en la comunicación con el cliente " + (clientName != null ? clientName : "Desconocido") + ": " + e.getMessage());
-            } finally {
-                if (clientName != null) {
-                    logMessage("Cliente '" + clientName + "' desconectado.");
-                    ClientInfo disconnectedClientInfo = clientMap.remove(writer); // Obtener info antes de eliminar
-                    if (disconnectedClientInfo != null) {
-                        broadcastMessage(disconnectedClientInfo.name, disconnectedClientInfo.colorHex, "ha abandonado el chat.");
-                    } else {
-                        // Caso para un cliente que se desconecta antes de establecer su nombre
-                        broadcastMessage("Un cliente desconocido", "#808080", "ha abandonado el chat.");
-                    }
+                if (info != null) { // Las conexiones sin saludo (p. ej. cerradas por el plazo) no llenan el log
+                    logMessage("Error en la comunicación con el cliente " + info.name + ": " + e.getMessage());
                 }
-                try {
-                    if (clientSocket != null && !clientSocket.isClosed()) {
-                        clientSocket.close();
-                    }
-                } catch (IOException e) {
-                    logMessage("Error al cerrar el socket del cliente: " + e.getMessage());
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } finally {
+                if (info != null) {
+                    unregisterClient(this, info);
                 }
+                close();
+                connectionClosed();
             }
         }
     }
@@ -6,27 +6,51 @@ import java.awt.*;
 import java.awt.event.WindowAdapter;
 import java.awt.event.WindowEvent;
 import java.io.IOException;
-import java.util.function.Consumer;
+import java.util.ArrayList;
+import java.util.List;
 
 public class ChatServerGUI extends JFrame {
 
+    private static final int LOG_REFRESH_MILLIS = 100; // Frecuencia de volcado del log a la vista
+    private static final int MAX_LOG_LINES = 2000;     // Líneas visibles; las más antiguas se descartan
+    private static final int LOG_BUFFER_CAPACITY = 16384;
+    private static final int METRICS_REFRESH_MILLIS = 1000;
+
     private JTextPane logArea;
     private JButton startStopButton;
     private JLabel statusLabel;
     private JLabel portLabel;
 
+    // Panel de métricas
+    private JLabel connectionsValue;
+    private JLabel acceptRateValue;
+    private JLabel messagesValue;
+    private JLabel bytesValue;
+    private JLabel fanoutValue;
+    private JLabel handshakeValue;
+    private JLabel queueDepthValue;
+    private JLabel slowConsumersValue;
+
     private ChatServerCore serverCore;
     private Thread serverThread;
+    private LogRingBuffer logBuffer;
+    private final List<String> logBatch = new ArrayList<>();
+    private final SimpleAttributeSet coreLogStyle = new SimpleAttributeSet();
+    private long reportedDroppedLogs = 0;
 
     public ChatServerGUI() {
+        this(ServerConfig.fromSystemProperties());
+    }
+
+    public ChatServerGUI(ServerConfig config) {
         super("Control del Servidor de Chat");
         createUI();
-        initServerLogic();
+        initServerLogic(config);
     }
 
     private void createUI() {
         setDefaultCloseOperation(JFrame.EXIT_ON_CLOSE);
-        setSize(600, 500);
+        setSize(700, 560);
         setLocationRelativeTo(null); // Centrar la ventana
 
         // Panel superior para controles y estado
@@ -55,6 +79,19 @@ public class ChatServerGUI extends JFrame {
         JScrollPane scrollPane = new JScrollPane(logArea);
         add(scrollPane, BorderLayout.CENTER);
 
+        // Panel inferior con las métricas principales, actualizado una vez por segundo
+        JPanel metricsPanel = new JPanel(new GridLayout(0, 4, 10, 2));
+        metricsPanel.setBorder(BorderFactory.createTitledBorder("Métricas"));
+        connectionsValue = addMetric(metricsPanel, "Conexiones:");
+        acceptRateValue = addMetric(metricsPanel, "Aceptadas/s:");
+        messagesValue = addMetric(metricsPanel, "Mensajes ent/sal:");
+        bytesValue = addMetric(metricsPanel, "Bytes ent/sal:");
+        fanoutValue = addMetric(metricsPanel, "Fan-out p50/p99:");
+        handshakeValue = addMetric(metricsPanel, "Saludo p99:");
+        queueDepthValue = addMetric(metricsPanel, "Cola salida máx:");
+        slowConsumersValue = addMetric(metricsPanel, "Lentos/descartes:");
+        add(metricsPanel, BorderLayout.SOUTH);
+
         // Listener para detener el servidor al cerrar la ventana
         addWindowListener(new WindowAdapter() {
             @Override
@@ -73,22 +110,87 @@ public class ChatServerGUI extends JFrame {
         setVisible(true);
     }
 
-    private void initServerLogic() {
-        // Creamos un Consumer que recibirá los mensajes y los añadirá al logArea
-        Consumer<String> guiLogger = message -> {
-            SwingUtilities.invokeLater(() -> {
-                try {
-                    StyledDocument doc = logArea.getStyledDocument();
-                    SimpleAttributeSet style = new SimpleAttributeSet();
-                    StyleConstants.setForeground(style, Color.BLACK); // Color del texto
-                    doc.insertString(doc.getLength(), message + "\n", style);
-                    logArea.setCaretPosition(doc.getLength()); // Scroll automático
-                } catch (BadLocationException e) {
-                    System.err.println("Error al insertar log en GUI: " + e.getMessage());
-                }
-            });
-        };
-        serverCore = new ChatServerCore(guiLogger); // Inyectamos el logger en el núcleo del servidor
+    private static JLabel addMetric(JPanel panel, String name) {
+        JLabel label = new JLabel(name);
+        label.setFont(new Font("Arial", Font.PLAIN, 12));
+        panel.add(label);
+        JLabel value = new JLabel("0");
+        value.setFont(new Font("Monospaced", Font.BOLD, 12));
+        panel.add(value);
+        return value;
+    }
+
+    private void initServerLogic(ServerConfig config) {
+        // El núcleo publica sus logs en un buffer sin bloqueos; un Timer de Swing lo vacía
+        // por lotes en el EDT en lugar de encolar un invokeLater por cada línea
+        logBuffer = new LogRingBuffer(LOG_BUFFER_CAPACITY);
+        StyleConstants.setForeground(coreLogStyle, Color.BLACK); // Color del texto
+        new Timer(LOG_REFRESH_MILLIS, e -> flushLogBuffer()).start();
+
+        serverCore = new ChatServerCore(logBuffer, config); // Inyectamos el logger en el núcleo del servidor
+        portLabel.setText("Puerto: " + serverCore.getConfig().getPort());
+        new Timer(METRICS_REFRESH_MILLIS, e -> refreshMetrics()).start();
+    }
+
+    // Lee las métricas del núcleo y actualiza el panel (se ejecuta en el EDT)
+    private void refreshMetrics() {
+        ServerMetrics metrics = serverCore.getMetrics();
+        connectionsValue.setText(String.valueOf(metrics.getActiveConnections()));
+        acceptRateValue.setText(String.format("%.1f", metrics.getAcceptsPerSecond()));
+        messagesValue.setText(metrics.getMessagesIn() + " / " + metrics.getMessagesOut());
+        bytesValue.setText(formatBytes(metrics.getBytesIn()) + " / " + formatBytes(metrics.getBytesOut()));
+        fanoutValue.setText(String.format("%.0f / %.0f µs", metrics.getFanoutP50Micros(), metrics.getFanoutP99Micros()));
+        handshakeValue.setText(String.format("%.1f ms", metrics.getHandshakeP99Micros() / 1000.0));
+        queueDepthValue.setText(String.valueOf(metrics.getOutboundQueueDepthMax()));
+        slowConsumersValue.setText(metrics.getSlowConsumerDisconnects() + " / " + metrics.getDroppedFrames());
+    }
+
+    private static String formatBytes(long bytes) {
+        if (bytes < 1024) {
+            return bytes + " B";
+        } else if (bytes < 1024 * 1024) {
+            return String.format("%.1f KB", bytes / 1024.0);
+        }
+        return String.format("%.1f MB", bytes / (1024.0 * 1024.0));
+    }
+
+    // Vuelca en la vista todas las líneas pendientes con una sola inserción (se ejecuta en el EDT)
+    private void flushLogBuffer() {
+        logBatch.clear();
+        logBuffer.drainTo(logBatch, Integer.MAX_VALUE);
+        long dropped = logBuffer.getDropped();
+        if (logBatch.isEmpty() && dropped == reportedDroppedLogs) {
+            return;
+        }
+
+        // Si llegan más líneas de las que caben en la vista, solo se insertan las últimas
+        int first = Math.max(0, logBatch.size() - MAX_LOG_LINES);
+        StringBuilder text = new StringBuilder();
+        if (dropped != reportedDroppedLogs || first > 0) {
+            text.append("[").append(dropped - reportedDroppedLogs + first).append(" líneas de log descartadas]\n");
+            reportedDroppedLogs = dropped;
+        }
+        for (int i = first; i < logBatch.size(); i++) {
+            text.append(logBatch.get(i)).append('\n');
+        }
+
+        try {
+            StyledDocument doc = logArea.getStyledDocument();
+            doc.insertString(doc.getLength(), text.toString(), coreLogStyle);
+            trimLog(doc);
+            logArea.setCaretPosition(doc.getLength()); // Scroll automático
+        } catch (BadLocationException e) {
+            System.err.println("Error al insertar log en GUI: " + e.getMessage());
+        }
+    }
+
+    // Elimina las líneas más antiguas para que la vista no crezca sin límite
+    private void trimLog(StyledDocument doc) throws BadLocationException {
+        Element root = doc.getDefaultRootElement();
+        int excess = root.getElementCount() - 1 - MAX_LOG_LINES; // El último párrafo está vacío
+        if (excess > 0) {
+            doc.remove(0, root.getElement(excess - 1).getEndOffset());
+        }
     }
 
     private void toggleServer() {
@@ -133,6 +235,7 @@ public class ChatServerGUI extends JFrame {
                 SimpleAttributeSet style = new SimpleAttributeSet();
                 StyleConstants.setForeground(style, Color.BLUE); // Mensajes de la GUI en azul
                 doc.insertString(doc.getLength(), message + "\n", style);
+                trimLog(doc);
                 logArea.setCaretPosition(doc.getLength());
             } catch (BadLocationException e) {
                 System.err.println("Error al insertar log en GUI: " + e.getMessage());
@@ -141,7 +244,9 @@ public class ChatServerGUI extends JFrame {
     }
 
 
-    public static void main(String[] args) {
-        SwingUtilities.invokeLater(() -> new ChatServerGUI());
+    public static void main(String[] args) throws IOException {
+        // Misma configuración externa que ChatServerHeadless (argumentos, fichero y entorno)
+        ServerConfig config = ServerConfig.load(args, System.getenv());
+        SwingUtilities.invokeLater(() -> new ChatServerGUI(config));
     }
 }
@@ -0,0 +1,79 @@
+package org.example.Servidor;
+
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+// Punto de entrada del servidor sin interfaz gráfica, para máquinas sin pantalla.
+//
+// Uso: java -cp SocketChat.jar org.example.Servidor.ChatServerHeadless [--config=chat.properties] [--opcion=valor ...]
+// Las opciones y su orden de prioridad están descritos en ServerConfig.
+// Al recibir SIGTERM (o Ctrl+C) deja de aceptar conexiones, envía los mensajes pendientes
+// durante como mucho drainTimeoutMillis y después cierra los sockets.
+public class ChatServerHeadless {
+
+    private static final int LOG_BUFFER_CAPACITY = 16384;
+
+    public static void main(String[] args) throws Exception {
+        for (String arg : args) {
+            if (arg.equals("--help") || arg.equals("-h")) {
+                printUsage();
+                return;
+            }
+        }
+
+        ServerConfig config;
+        try {
+            config = ServerConfig.load(args, System.getenv());
+        } catch (IllegalArgumentException | IOException e) {
+            System.err.println("Configuración no válida: " + e.getMessage());
+            printUsage();
+            System.exit(2);
+            return;
+        }
+
+        LogRingBuffer logBuffer = new LogRingBuffer(LOG_BUFFER_CAPACITY);
+        Writer logWriter = config.getLogFile() != null
+                ? Files.newBufferedWriter(Path.of(config.getLogFile()), StandardCharsets.UTF_8,
+                        StandardOpenOption.CREATE, StandardOpenOption.APPEND)
+                : new OutputStreamWriter(System.out, StandardCharsets.UTF_8);
+        LogDrainer logDrainer = new LogDrainer(logBuffer, logWriter);
+        Thread logThread = logDrainer.start();
+
+        ChatServerCore serverCore = new ChatServerCore(logBuffer, config);
+        Thread serverThread = new Thread(serverCore, "chat-server");
+
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            serverCore.shutdownGracefully(config.getDrainTimeoutMillis());
+            try {
+                serverThread.join(2000);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            logDrainer.stop();
+            try {
+                logThread.join(1000);
+                logWriter.close();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } catch (IOException e) {
+                System.err.println("Error al cerrar el log: " + e.getMessage());
+            }
+        }, "chat-shutdown"));
+
+        serverThread.start();
+        serverThread.join();
+    }
+
+    private static void printUsage() {
+        System.out.println("Uso: ChatServerHeadless [--config=fichero.properties] [--opcion=valor ...]");
+        System.out.println("Opciones (también como chat.server.<opcion> en el fichero o -D, y CHAT_SERVER_<OPCION> en el entorno):");
+        for (String option : ServerConfig.OPTIONS) {
+            System.out.println("  --" + option + "   (" + ServerConfig.ENV_PREFIX + ServerConfig.toEnvName(option) + ")");
+        }
+    }
+}
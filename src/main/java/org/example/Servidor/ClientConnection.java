@@ -0,0 +1,44 @@
+package org.example.Servidor;
+
+import java.nio.ByteBuffer;
+
+// Abstracción de una conexión de cliente, independiente del modelo de I/O
+// (hilo por cliente o bucle de eventos NIO)
+interface ClientConnection {
+
+    // Encola una trama ya codificada. La trama es compartida entre destinatarios:
+    // la conexión debe escribir una vista propia (duplicate()) y no modificarla
+    default void sendFrame(ByteBuffer frame) {
+        sendFrame(frame, false);
+    }
+
+    // Con required, la trama no se descarta aunque se llene la cola de salida (ver OutboundQueue)
+    void sendFrame(ByteBuffer frame, boolean required);
+
+    // Datos del cliente; null hasta que el núcleo lo registra tras el saludo
+    ChatServerCore.ClientInfo info();
+
+    void setInfo(ChatServerCore.ClientInfo info);
+
+    // Envía una línea de texto al cliente (sin el salto de línea final), con el protocolo negociado
+    default void send(String line) {
+        ChatServerCore.ClientInfo info = info();
+        sendFrame(info != null && info.binary != null ? info.binary.encode(BinaryFrames.system(line)) : Frames.line(line));
+    }
+
+    // Envía un evento de un broadcast con la codificación del protocolo negociado
+    default void sendEvent(ChatEvent event) {
+        ChatServerCore.ClientInfo info = info();
+        if (info != null && info.binary != null) {
+            info.binary.send(this, event);
+        } else {
+            sendFrame(event.textFrame());
+        }
+    }
+
+    // Tramas pendientes de escribir en el socket (aproximado; para la parada ordenada)
+    int pendingFrames();
+
+    // Cierra la conexión; debe poder llamarse más de una vez
+    void close();
+}
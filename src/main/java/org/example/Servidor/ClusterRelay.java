@@ -0,0 +1,423 @@
+package org.example.Servidor;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.ProtocolException;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.locks.ReentrantLock;
+
+// Reenvío de broadcasts entre los nodos de un clúster (clusterPort y clusterPeers en ServerConfig).
+//
+// Cada nodo abre un enlace TCP de salida hacia cada par de la lista y acepta los enlaces de entrada
+// de los demás: la lista debe formar una malla completa. Por cada enlace de salida hay un hilo con su
+// cola; los mensajes se escriben en lotes (lo que haya en la cola, hasta MAX_BATCH) con un solo flush.
+//
+// Solo se reenvían los mensajes de clientes locales y nunca lo que llega de otro nodo, así que un
+// mensaje recorre cada enlace una vez y no puede dar vueltas. Cada mensaje lleva la secuencia de su
+// nodo de origen; el receptor descarta lo que ya vio (p. ej. el lote que se reenvía tras reconectar).
+// La secuencia se asigna y el mensaje se encola en todos los enlaces bajo un mismo cerrojo, y cada
+// enlace es una única conexión TCP: los mensajes de un remitente llegan en el orden en que se enviaron.
+// Tras cada lote el receptor confirma por el mismo enlace la última secuencia recibida; el emisor
+// guarda lo no confirmado y lo reenvía al reconectar, y el receptor descarta los repetidos. Así cada
+// mensaje se entrega exactamente una vez mientras el nodo de origen siga en marcha: si se detiene,
+// lo que aún no había confirmado el par se pierde.
+//
+// El puerto de clúster no se autentica: debe quedar en una red de confianza (bindAddress). Las
+// longitudes y tipos que llegan se validan y un enlace que envía datos no válidos se cierra.
+final class ClusterRelay {
+
+    private static final int MAGIC = 0x43484e32; // "CHN2": lotes con confirmación
+    private static final int MAX_STRING_BYTES = 1 << 20; // Cadenas del enlace sin maxLineLength
+    private static final int MAX_BATCH = 256;
+    private static final int QUEUE_CAPACITY = 64 * 1024; // Mensajes pendientes por par mientras no hay conexión
+    private static final int CONNECT_TIMEOUT_MILLIS = 2000;
+    private static final long MIN_BACKOFF_MILLIS = 100;
+    private static final long MAX_BACKOFF_MILLIS = 5000;
+    private static final byte FLAG_SENDER_GONE = 1; // El remitente se desconectó: el receptor lo olvida
+
+    // Un mensaje en tránsito entre nodos
+    private record Relayed(long sequence, ChatEvent.Kind kind, boolean senderGone, int senderId,
+                           String room, String senderName, String senderColorHex, String text) {
+    }
+
+    // Último mensaje entregado de un nodo de origen; epoch distingue los reinicios del nodo
+    private record Seen(long epoch, long sequence) {
+    }
+
+    private final ChatServerCore core;
+    private final ServerMetrics metrics;
+    private final String nodeId;
+    private final long epoch = System.currentTimeMillis();
+    private final int port;
+    private final int maxStringBytes; // Un nombre o un mensaje no pueden superar lo que acepta un cliente
+    private final List<PeerLink> peers = new ArrayList<>();
+    private final ReentrantLock publishLock = new ReentrantLock();
+    private long nextSequence = 0; // Protegido por publishLock
+    private final ConcurrentHashMap<String, Seen> seen = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<String, Socket> inbound = new ConcurrentHashMap<>(); // Enlace de entrada por nodo
+    private final ConcurrentHashMap<String, ChatServerCore.ClientInfo> remoteSenders = new ConcurrentHashMap<>();
+    private final Set<Thread> threads = ConcurrentHashMap.newKeySet();
+    private ServerSocket listener;
+    private volatile boolean running = false;
+
+    ClusterRelay(ChatServerCore core, ServerMetrics metrics, ServerConfig config) {
+        this.core = core;
+        this.metrics = metrics;
+        this.nodeId = config.getNodeId() != null ? config.getNodeId() : UUID.randomUUID().toString().substring(0, 8);
+        this.port = config.getClusterPort();
+        this.maxStringBytes = config.getMaxLineLength() > 0 ? config.getMaxLineLength() : MAX_STRING_BYTES;
+        for (String peer : config.getClusterPeers()) {
+            int colon = peer.lastIndexOf(':');
+            if (colon <= 0) {
+                throw new IllegalArgumentException("Se esperaba host:puerto en clusterPeers: " + peer);
+            }
+            peers.add(new PeerLink(peer.substring(0, colon), Integer.parseInt(peer.substring(colon + 1))));
+        }
+    }
+
+    String nodeId() {
+        return nodeId;
+    }
+
+    void start(String bindAddress) throws IOException {
+        listener = new ServerSocket();
+        listener.setReuseAddress(true);
+        listener.bind(bindAddress != null ? new InetSocketAddress(bindAddress, port) : new InetSocketAddress(port));
+        running = true;
+        startThread(this::acceptLoop, "chat-cluster-accept");
+        for (PeerLink peer : peers) {
+            startThread(peer, "chat-cluster-out-" + peer.host + ":" + peer.port);
+        }
+    }
+
+    void stop() {
+        running = false;
+        try {
+            if (listener != null) {
+                listener.close();
+            }
+        } catch (IOException e) {
+            // Ignorar errores al cerrar
+        }
+        for (Socket socket : inbound.values()) {
+            closeQuietly(socket);
+        }
+        for (PeerLink peer : peers) {
+            closeQuietly(peer.socket);
+        }
+        for (Thread thread : threads) {
+            thread.interrupt();
+        }
+    }
+
+    // Reenvía a todos los pares un mensaje de un cliente local
+    void publish(String room, ChatEvent.Kind kind, ChatServerCore.ClientInfo sender, String text, boolean senderGone) {
+        if (peers.isEmpty()) {
+            return;
+        }
+        publishLock.lock();
+        try {
+            Relayed message = new Relayed(++nextSequence, kind, senderGone, sender.id, room, sender.name, sender.colorHex, text);
+            for (PeerLink peer : peers) {
+                if (!peer.queue.offer(message)) {
+                    metrics.clusterDropped.increment();
+                }
+            }
+        } finally {
+            publishLock.unlock();
+        }
+    }
+
+    private void startThread(Runnable task, String name) {
+        Thread thread = new Thread(() -> {
+            try {
+                task.run();
+            } finally {
+                threads.remove(Thread.currentThread());
+            }
+        }, name);
+        thread.setDaemon(true);
+        threads.add(thread);
+        thread.start();
+    }
+
+    private void acceptLoop() {
+        while (running) {
+            try {
+                Socket socket = listener.accept();
+                socket.setTcpNoDelay(true);
+                startThread(() -> readLoop(socket), "chat-cluster-in");
+            } catch (IOException e) {
+                if (running) {
+                    core.logMessage("Error aceptando un nodo del clúster: " + e.getMessage());
+                }
+            }
+        }
+    }
+
+    // Lee los lotes de un nodo, entrega cada mensaje nuevo a las salas locales y confirma el lote
+    private void readLoop(Socket socket) {
+        String node = null;
+        try (socket) {
+            DataInputStream in = new DataInputStream(new BufferedInputStream(socket.getInputStream(), 64 * 1024));
+            DataOutputStream acks = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream(), 64));
+            if (in.readInt() != MAGIC) {
+                core.logMessage("Conexión de clúster no válida desde " + socket.getRemoteSocketAddress());
+                return;
+            }
+            node = in.readUTF();
+            long nodeEpoch = in.readLong();
+            if (node.equals(nodeId)) {
+                core.logMessage("Se ignora un enlace de clúster hacia este mismo nodo (" + nodeId + ").");
+                return;
+            }
+            Socket previous = inbound.put(node, socket);
+            if (previous != null) {
+                closeQuietly(previous); // Un solo lector por nodo de origen mantiene el orden
+            }
+            core.logMessage("Nodo " + node + " conectado al clúster.");
+
+            while (running) {
+                int count = in.readInt();
+                if (count < 1 || count > MAX_BATCH) {
+                    throw new ProtocolException("lote de " + count + " mensajes");
+                }
+                long last = 0;
+                for (int i = 0; i < count; i++) {
+                    Relayed message = read(in);
+                    if (firstDelivery(node, nodeEpoch, message.sequence)) {
+                        deliver(node, message);
+                    } else {
+                        metrics.clusterDuplicates.increment();
+                    }
+                    last = message.sequence;
+                }
+                acks.writeLong(last); // Las secuencias llegan en orden: todo lo anterior también se recibió
+                acks.flush();
+            }
+        } catch (EOFException | SocketException e) {
+            // El nodo cerró el enlace o se está deteniendo el servidor
+        } catch (ProtocolException e) {
+            core.logMessage("Enlace de clúster cerrado: datos no válidos desde "
+                    + (node != null ? "el nodo " + node : socket.getRemoteSocketAddress()) + " (" + e.getMessage() + ").");
+        } catch (IOException e) {
+            core.logMessage("Error en el enlace con el nodo " + (node != null ? node : socket.getRemoteSocketAddress()) + ": " + e.getMessage());
+        } finally {
+            if (node != null && inbound.remove(node, socket)) {
+                core.logMessage("Nodo " + node + " desconectado del clúster.");
+            }
+        }
+    }
+
+    // Registra la secuencia recibida; devuelve false si el mensaje ya se había entregado
+    private boolean firstDelivery(String node, long nodeEpoch, long sequence) {
+        boolean[] fresh = {false};
+        seen.compute(node, (key, last) -> {
+            if (last == null || nodeEpoch > last.epoch) {
+                if (last != null) {
+                    forgetSenders(node); // El nodo se reinició: sus ids de remitente ya no valen
+                }
+                fresh[0] = true;
+                return new Seen(nodeEpoch, sequence);
+            }
+            if (nodeEpoch == last.epoch && sequence > last.sequence) {
+                fresh[0] = true;
+                return new Seen(nodeEpoch, sequence);
+            }
+            return last;
+        });
+        return fresh[0];
+    }
+
+    private void deliver(String node, Relayed message) {
+        String key = node + '/' + message.senderId;
+        ChatServerCore.ClientInfo sender = message.senderGone
+                ? remoteSenders.remove(key)
+                : remoteSenders.get(key);
+        if (sender == null) {
+            // Remitente de otro nodo representado con un id local para el protocolo binario
+            sender = new ChatServerCore.ClientInfo(message.senderName, message.senderColorHex, null);
+            if (!message.senderGone) {
+                remoteSenders.put(key, sender);
+            }
+        }
+        core.deliverRemote(message.room, message.kind, sender, message.text);
+        metrics.clusterIn.increment();
+    }
+
+    private void forgetSenders(String node) {
+        remoteSenders.keySet().removeIf(key -> key.startsWith(node + '/'));
+    }
+
+    private Relayed read(DataInputStream in) throws IOException {
+        long sequence = in.readLong();
+        int kind = in.readByte();
+        if (kind < 0 || kind >= ChatEvent.Kind.values().length) {
+            throw new ProtocolException("tipo de mensaje " + kind);
+        }
+        boolean senderGone = (in.readByte() & FLAG_SENDER_GONE) != 0;
+        int senderId = in.readInt();
+        return new Relayed(sequence, ChatEvent.Kind.values()[kind], senderGone, senderId,
+                readString(in), readString(in), readString(in), readString(in));
+    }
+
+    private static void write(DataOutputStream out, Relayed message) throws IOException {
+        out.writeLong(message.sequence);
+        out.writeByte(message.kind.ordinal());
+        out.writeByte(message.senderGone ? FLAG_SENDER_GONE : 0);
+        out.writeInt(message.senderId);
+        writeString(out, message.room);
+        writeString(out, message.senderName);
+        writeString(out, message.senderColorHex);
+        writeString(out, message.text);
+    }
+
+    // writeUTF limita a 64 KB; las líneas de chat pueden ser más largas
+    private static void writeString(DataOutputStream out, String value) throws IOException {
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private String readString(DataInputStream in) throws IOException {
+        int length = in.readInt();
+        if (length < 0 || length > maxStringBytes) {
+            throw new ProtocolException("cadena de " + length + " bytes");
+        }
+        byte[] bytes = new byte[length];
+        in.readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private static void closeQuietly(Socket socket) {
+        try {
+            if (socket != null) {
+                socket.close();
+            }
+        } catch (IOException e) {
+            // Ignorar errores al cerrar
+        }
+    }
+
+    // Enlace de salida hacia un par: conecta, reconecta con espera exponencial y escribe los lotes
+    private final class PeerLink implements Runnable {
+        final String host;
+        final int port;
+        final LinkedBlockingQueue<Relayed> queue = new LinkedBlockingQueue<>(QUEUE_CAPACITY);
+        volatile Socket socket;
+        volatile long acked = 0; // Última secuencia confirmada por el par
+
+        PeerLink(String host, int port) {
+            this.host = host;
+            this.port = port;
+        }
+
+        @Override
+        public void run() {
+            List<Relayed> batch = new ArrayList<>(MAX_BATCH);
+            ArrayDeque<Relayed> unacked = new ArrayDeque<>(); // Enviados sin confirmar; se reenvían al reconectar
+            long backoff = MIN_BACKOFF_MILLIS;
+            while (running) {
+                boolean connected = false;
+                try (Socket s = new Socket()) {
+                    socket = s;
+                    s.setTcpNoDelay(true);
+                    s.connect(new InetSocketAddress(host, port), CONNECT_TIMEOUT_MILLIS);
+                    DataOutputStream out = new DataOutputStream(new BufferedOutputStream(s.getOutputStream(), 64 * 1024));
+                    out.writeInt(MAGIC);
+                    out.writeUTF(nodeId);
+                    out.writeLong(epoch);
+                    out.flush();
+                    connected = true;
+                    backoff = MIN_BACKOFF_MILLIS;
+                    core.logMessage("Enlace de clúster abierto con " + host + ":" + port + ".");
+                    startThread(() -> readAcks(s), "chat-cluster-ack-" + host + ":" + port);
+
+                    prune(unacked);
+                    List<Relayed> resend = new ArrayList<>(unacked);
+                    for (int i = 0; i < resend.size(); i += MAX_BATCH) {
+                        writeBatch(out, resend.subList(i, Math.min(i + MAX_BATCH, resend.size())));
+                    }
+
+                    while (running) {
+                        batch.add(queue.take());
+                        queue.drainTo(batch, MAX_BATCH - 1);
+                        prune(unacked);
+                        for (Relayed message : batch) {
+                            if (unacked.size() >= QUEUE_CAPACITY) {
+                                unacked.pollFirst(); // El par no confirma desde hace mucho: ya no se podrá reenviar
+                                metrics.clusterDropped.increment();
+                            }
+                            unacked.addLast(message);
+                        }
+                        writeBatch(out, batch);
+                        batch.clear();
+                    }
+                } catch (IOException e) {
+                    if (connected && running) {
+                        core.logMessage("Enlace de clúster con " + host + ":" + port + " perdido: " + e.getMessage());
+                    }
+                } catch (InterruptedException e) {
+                    return; // stop()
+                } finally {
+                    socket = null;
+                    batch.clear(); // Lo que no se llegó a escribir ya está en unacked y se reenvía desde ahí
+                }
+
+                try {
+                    Thread.sleep(backoff);
+                } catch (InterruptedException e) {
+                    return;
+                }
+                backoff = Math.min(backoff * 2, MAX_BACKOFF_MILLIS);
+            }
+        }
+
+        private void writeBatch(DataOutputStream out, List<Relayed> messages) throws IOException {
+            out.writeInt(messages.size());
+            for (Relayed message : messages) {
+                write(out, message);
+            }
+            out.flush();
+            metrics.clusterOut.add(messages.size());
+        }
+
+        // Olvida lo que el par ya confirmó
+        private void prune(ArrayDeque<Relayed> unacked) {
+            long confirmed = acked;
+            while (!unacked.isEmpty() && unacked.peekFirst().sequence <= confirmed) {
+                unacked.pollFirst();
+            }
+        }
+
+        // Lee las confirmaciones del par hasta que se cierre el enlace
+        private void readAcks(Socket s) {
+            try {
+                DataInputStream in = new DataInputStream(new BufferedInputStream(s.getInputStream(), 64));
+                while (true) {
+                    long sequence = in.readLong();
+                    if (sequence > acked) {
+                        acked = sequence;
+                    }
+                }
+            } catch (IOException e) {
+                // Enlace cerrado; el hilo de escritura lo detecta al escribir
+            }
+        }
+    }
+}
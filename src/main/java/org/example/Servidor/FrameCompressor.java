@@ -0,0 +1,176 @@
+package org.example.Servidor;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.zip.Deflater;
+
+// Compresión deflate de tramas binarias para los clientes que la piden con "@hello deflate=1".
+// Hay una para todo el servidor y se usa de dos formas:
+//   - Trama a trama (DEFLATED): las tramas de al menos minBytes se comprimen sin estado, así la
+//     versión comprimida de un broadcast se calcula una vez (ChatEvent) y la comparten todos.
+//   - Ráfagas para un solo cliente (DEFLATE_STREAM): el historial y la lista de presencia al entrar
+//     van en un único flujo deflate, en el que cada mensaje aprovecha el diccionario de los anteriores;
+//     los mensajes cortos, que sueltos casi no se comprimen, en una ráfaga sí lo hacen.
+// Una trama o ráfaga que no se reduce se envía tal cual.
+final class FrameCompressor {
+
+    private static final int LEVEL = Deflater.DEFAULT_COMPRESSION;
+    private static final int STREAM_CHUNK = 32 * 1024; // Bytes sin comprimir por trama del flujo, para ir mostrando el historial
+    private static final int MAX_POOLED = 16;
+
+    private final int minBytes;
+    private final ServerMetrics metrics;
+    private final ReentrantLock poolLock = new ReentrantLock();
+    private final ArrayDeque<Deflater> pool = new ArrayDeque<>(); // Cada Deflater reserva cientos de KB fuera del heap
+
+    FrameCompressor(int minBytes, ServerMetrics metrics) {
+        this.minBytes = minBytes;
+        this.metrics = metrics;
+    }
+
+    // Devuelve la trama DEFLATED o la misma trama si es pequeña o no se reduce
+    ByteBuffer compress(ByteBuffer frame) {
+        int size = frame.remaining();
+        if (size < minBytes) {
+            return frame;
+        }
+        long start = System.nanoTime();
+        Deflater deflater = borrow();
+        try {
+            deflater.setInput(frame.duplicate());
+            deflater.finish();
+            byte[] buffer = new byte[size]; // Si no cabe en menos bytes que la original, no compensa
+            int length = BinaryFrames.HEADER;
+            while (!deflater.finished() && length < buffer.length) {
+                length += deflater.deflate(buffer, length, buffer.length - length);
+            }
+            if (!deflater.finished() || length >= size) {
+                return frame;
+            }
+            metrics.compressedFrames.increment();
+            metrics.compressionBytesIn.add(size);
+            metrics.compressionBytesOut.add(length);
+            return BinaryFrames.withHeader(BinaryFrames.DEFLATED, buffer, length - BinaryFrames.HEADER);
+        } finally {
+            giveBack(deflater);
+            metrics.compressionNanos.add(System.nanoTime() - start);
+        }
+    }
+
+    // Sustituye una ráfaga de tramas para un solo cliente por las tramas de un flujo deflate nuevo.
+    // Las tramas del flujo se cortan siempre entre dos tramas originales
+    List<ByteBuffer> compressBurst(List<ByteBuffer> frames) {
+        long size = 0;
+        for (ByteBuffer frame : frames) {
+            size += frame.remaining();
+        }
+        if (size < minBytes) {
+            return frames;
+        }
+        long start = System.nanoTime();
+        Deflater deflater = borrow();
+        try {
+            List<ByteBuffer> compressed = new ArrayList<>();
+            Output out = new Output();
+            out.startFrame(true);
+            int chunkInput = 0;
+            long output = 0;
+            for (int i = 0; i < frames.size(); i++) {
+                ByteBuffer frame = frames.get(i);
+                chunkInput += frame.remaining();
+                deflater.setInput(frame.duplicate());
+                boolean last = i == frames.size() - 1;
+                if (chunkInput >= STREAM_CHUNK || last) {
+                    out.deflate(deflater, Deflater.SYNC_FLUSH);
+                    compressed.add(out.finishFrame());
+                    output += out.length;
+                    if (!last) {
+                        out.startFrame(false);
+                        chunkInput = 0;
+                    }
+                } else {
+                    out.deflate(deflater, Deflater.NO_FLUSH);
+                }
+            }
+            if (output >= size) {
+                return frames; // Datos que no se comprimen (ya comprimidos, aleatorios...)
+            }
+            metrics.compressedFrames.add(compressed.size());
+            metrics.compressionBytesIn.add(size);
+            metrics.compressionBytesOut.add(output);
+            metrics.compressionSavedBytes.add(size - output); // Un solo destinatario
+            return compressed;
+        } finally {
+            giveBack(deflater);
+            metrics.compressionNanos.add(System.nanoTime() - start);
+        }
+    }
+
+    // Anota lo que se ahorró al enviar a un destinatario la versión comprimida de una trama compartida
+    void sent(ByteBuffer original, ByteBuffer frame) {
+        if (frame != original) {
+            metrics.compressionSavedBytes.add(original.remaining() - frame.remaining());
+        }
+    }
+
+    private Deflater borrow() {
+        poolLock.lock();
+        try {
+            Deflater deflater = pool.pollFirst();
+            if (deflater != null) {
+                return deflater;
+            }
+        } finally {
+            poolLock.unlock();
+        }
+        return new Deflater(LEVEL, true); // Sin cabecera zlib: el cliente usa Inflater(true)
+    }
+
+    private void giveBack(Deflater deflater) {
+        deflater.reset();
+        poolLock.lock();
+        try {
+            if (pool.size() < MAX_POOLED) {
+                pool.addFirst(deflater);
+                return;
+            }
+        } finally {
+            poolLock.unlock();
+        }
+        deflater.end();
+    }
+
+    // Trama DEFLATE_STREAM en construcción; crece según hace falta
+    private static final class Output {
+        private byte[] bytes = new byte[4096];
+        private int length;
+
+        void startFrame(boolean newStream) {
+            bytes = new byte[bytes.length];
+            bytes[BinaryFrames.HEADER] = (byte) (newStream ? 1 : 0);
+            length = BinaryFrames.HEADER + 1;
+        }
+
+        // Con NO_FLUSH sale cuando el Deflater ha consumido la entrada; con SYNC_FLUSH, cuando lo ha vaciado todo
+        void deflate(Deflater deflater, int flush) {
+            while (true) {
+                if (length == bytes.length) {
+                    bytes = Arrays.copyOf(bytes, bytes.length * 2);
+                }
+                int space = bytes.length - length;
+                length += deflater.deflate(bytes, length, space, flush);
+                if (length < bytes.length && (flush != Deflater.NO_FLUSH || deflater.needsInput())) {
+                    return;
+                }
+            }
+        }
+
+        ByteBuffer finishFrame() {
+            return BinaryFrames.withHeader(BinaryFrames.DEFLATE_STREAM, bytes, length - BinaryFrames.HEADER);
+        }
+    }
+}
@@ -0,0 +1,63 @@
+package org.example.Servidor;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.locks.ReentrantLock;
+
+// Codificación de tramas de salida. Cada mensaje se codifica a UTF-8 una sola vez en un
+// ByteBuffer directo de solo lectura que comparten todos los destinatarios; cada conexión
+// escribe su propia vista (duplicate()) sin volver a codificar ni copiar los bytes.
+final class Frames {
+
+    // Las tramas se recortan de bloques directos grandes para no reservar memoria directa
+    // por mensaje; un bloque se libera cuando el GC recoge la última trama que lo usa
+    private static final int SLAB_SIZE = 1 << 20;
+    private static final int MAX_SLAB_FRAME = 64 * 1024; // Tramas mayores van en su propio buffer
+
+    private static final ReentrantLock slabLock = new ReentrantLock();
+    private static ByteBuffer slab = ByteBuffer.allocateDirect(SLAB_SIZE);
+
+    private Frames() {
+    }
+
+    // Trama de chat con el formato del protocolo de texto: "color|nombre: mensaje\n"
+    static ByteBuffer chatLine(String colorHex, String name, String message) {
+        StringBuilder line = new StringBuilder(colorHex.length() + name.length() + message.length() + 4);
+        line.append(colorHex).append('|').append(name).append(": ").append(message).append('\n');
+        return encode(line);
+    }
+
+    // Trama con una línea de texto simple (se le añade el salto de línea)
+    static ByteBuffer line(String text) {
+        StringBuilder line = new StringBuilder(text.length() + 1);
+        line.append(text).append('\n');
+        return encode(line);
+    }
+
+    private static ByteBuffer encode(CharSequence text) {
+        return share(text.toString().getBytes(StandardCharsets.UTF_8));
+    }
+
+    // Copia una trama ya codificada a un bloque directo y devuelve una vista de solo lectura
+    static ByteBuffer share(byte[] bytes) {
+        return share(bytes, bytes.length);
+    }
+
+    // Igual, con solo los primeros length bytes
+    static ByteBuffer share(byte[] bytes, int length) {
+        if (length > MAX_SLAB_FRAME) {
+            return ByteBuffer.wrap(bytes, 0, length).slice().asReadOnlyBuffer();
+        }
+        slabLock.lock();
+        try {
+            if (slab.remaining() < length) {
+                slab = ByteBuffer.allocateDirect(SLAB_SIZE);
+            }
+            int start = slab.position();
+            slab.put(bytes, 0, length);
+            return slab.slice(start, length).asReadOnlyBuffer();
+        } finally {
+            slabLock.unlock();
+        }
+    }
+}
@@ -0,0 +1,44 @@
+package org.example.Servidor;
+
+import java.util.HashMap;
+import java.util.Map;
+
+// Primera línea opcional del cliente para negociar opciones: "@hello clave=valor ... <nombre>".
+// Los clientes antiguos envían solo el nombre y siguen con el protocolo de texto.
+final class HelloLine {
+
+    static final String PREFIX = "@hello ";
+
+    final Map<String, String> options;
+    final String name;
+
+    private HelloLine(Map<String, String> options, String name) {
+        this.options = options;
+        this.name = name;
+    }
+
+    static boolean isHello(String line) {
+        return line != null && line.startsWith(PREFIX);
+    }
+
+    // Las opciones van primero; el primer token sin '=' y todo lo que sigue es el nombre
+    static HelloLine parse(String line) {
+        Map<String, String> options = new HashMap<>();
+        String rest = line.substring(PREFIX.length()).trim();
+        while (!rest.isEmpty()) {
+            int space = rest.indexOf(' ');
+            String token = space < 0 ? rest : rest.substring(0, space);
+            int eq = token.indexOf('=');
+            if (eq <= 0) {
+                break;
+            }
+            options.put(token.substring(0, eq), token.substring(eq + 1));
+            rest = space < 0 ? "" : rest.substring(space + 1).trim();
+        }
+        return new HelloLine(options, rest);
+    }
+
+    String option(String key) {
+        return options.get(key);
+    }
+}
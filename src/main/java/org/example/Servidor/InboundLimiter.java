@@ -0,0 +1,93 @@
+package org.example.Servidor;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+
+// Límite de mensajes entrantes de una conexión: un cubo de tokens propio (clientRateLimit) y
+// otro compartido por todo el servidor (globalRateLimit). Cuando no hay token, la conexión deja
+// de leer de su socket hasta que lo haya: el cliente acaba bloqueado por la ventana TCP en lugar
+// de acumular mensajes en el servidor. Solo lo usa el hilo que lee de la conexión.
+final class InboundLimiter {
+
+    // Cubo de tokens: se rellena a rate por segundo hasta capacity
+    static final class TokenBucket {
+        private final ReentrantLock lock = new ReentrantLock();
+        private final double tokensPerNano;
+        private final double capacity;
+        private double tokens;
+        private long lastRefill = System.nanoTime();
+
+        TokenBucket(double ratePerSecond, double burst) {
+            this.tokensPerNano = ratePerSecond / 1e9;
+            this.capacity = Math.max(1, burst);
+            this.tokens = capacity;
+        }
+
+        // Toma un token si lo hay y devuelve 0; si no, devuelve los nanosegundos que faltan para el siguiente
+        long tryAcquire() {
+            lock.lock();
+            try {
+                long now = System.nanoTime();
+                tokens = Math.min(capacity, tokens + (now - lastRefill) * tokensPerNano);
+                lastRefill = now;
+                if (tokens >= 1) {
+                    tokens -= 1;
+                    return 0;
+                }
+                return (long) Math.ceil((1 - tokens) / tokensPerNano);
+            } finally {
+                lock.unlock();
+            }
+        }
+    }
+
+    private final TokenBucket client; // null: sin límite por cliente
+    private final TokenBucket global; // null: sin límite global
+    private final ServerMetrics metrics;
+    private boolean clientTokenTaken = false; // Ya se tomó el token propio y se espera al global
+    private boolean throttled = false;        // La línea actual ya se contó como limitada
+
+    InboundLimiter(TokenBucket client, TokenBucket global, ServerMetrics metrics) {
+        this.client = client;
+        this.global = global;
+        this.metrics = metrics;
+    }
+
+    // Devuelve 0 si la siguiente línea puede procesarse ya; si no, cuánto esperar (ns) antes de reintentarlo
+    long admit() {
+        if (client != null && !clientTokenTaken) {
+            long wait = client.tryAcquire();
+            if (wait > 0) {
+                countThrottled(metrics.clientRateLimited);
+                return wait;
+            }
+            clientTokenTaken = true;
+        }
+        if (global != null) {
+            long wait = global.tryAcquire();
+            if (wait > 0) {
+                countThrottled(metrics.globalRateLimited);
+                return wait;
+            }
+        }
+        clientTokenTaken = false;
+        throttled = false;
+        return 0;
+    }
+
+    // Versión bloqueante de admit() para el modo de un hilo por cliente
+    void await() throws InterruptedException {
+        long wait;
+        while ((wait = admit()) > 0) {
+            TimeUnit.NANOSECONDS.sleep(wait);
+        }
+    }
+
+    private void countThrottled(LongAdder counter) {
+        if (!throttled) {
+            throttled = true;
+            counter.increment();
+        }
+    }
+}
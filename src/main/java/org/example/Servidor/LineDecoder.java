@@ -0,0 +1,76 @@
+package org.example.Servidor;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+// Separa un flujo de bytes UTF-8 en líneas terminadas en '\n' (acepta también "\r\n").
+// Lo comparten el modo bloqueante y el modo NIO para que ambos encuadren igual.
+// Las líneas de más de maxLength bytes no se acumulan: se descartan según llegan y se avisa con onTooLong.
+class LineDecoder {
+
+    private final int maxLength; // 0: sin límite
+    private final Runnable onTooLong;
+    private byte[] line = new byte[256];
+    private int length = 0;
+    private boolean discarding = false; // Saltando el resto de una línea demasiado larga
+
+    LineDecoder() {
+        this(0, null);
+    }
+
+    LineDecoder(int maxLength, Runnable onTooLong) {
+        this.maxLength = maxLength;
+        this.onTooLong = onTooLong;
+    }
+
+    // Consume bytes de src hasta completar una línea; devuelve null si faltan bytes
+    String next(ByteBuffer src) {
+        while (src.hasRemaining()) {
+            byte b = src.get();
+            if (b == '\n') {
+                if (discarding) {
+                    discarding = false;
+                    if (onTooLong != null) {
+                        onTooLong.run();
+                    }
+                    continue;
+                }
+                int end = length;
+                if (end > 0 && line[end - 1] == '\r') {
+                    end--;
+                }
+                length = 0;
+                return new String(line, 0, end, StandardCharsets.UTF_8);
+            }
+            if (discarding) {
+                continue;
+            }
+            if (maxLength > 0 && length >= maxLength) {
+                discarding = true;
+                length = 0;
+                continue;
+            }
+            if (length == line.length) {
+                byte[] grown = new byte[line.length * 2];
+                System.arraycopy(line, 0, grown, 0, length);
+                line = grown;
+            }
+            line[length++] = b;
+        }
+        return null;
+    }
+
+    // Devuelve lo que quede pendiente como última línea (al cerrarse el flujo) o null si no hay nada
+    String remaining() {
+        if (discarding) {
+            discarding = false;
+            return null;
+        }
+        if (length == 0) {
+            return null;
+        }
+        String rest = new String(line, 0, length, StandardCharsets.UTF_8);
+        length = 0;
+        return rest;
+    }
+}
@@ -0,0 +1,50 @@
+package org.example.Servidor;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ReadableByteChannel;
+import java.util.concurrent.atomic.LongAdder;
+
+// Lector de líneas sin bloques synchronized, para que los hilos virtuales no
+// queden fijados a su hilo portador mientras esperan datos del socket
+class LineReader {
+
+    private final ReadableByteChannel channel;
+    private final ByteBuffer buffer = ByteBuffer.allocate(8192);
+    private final LineDecoder decoder;
+    private final LongAdder bytesRead; // Puede ser null
+
+    LineReader(ReadableByteChannel channel) {
+        this(channel, null);
+    }
+
+    LineReader(ReadableByteChannel channel, LongAdder bytesRead) {
+        this(channel, bytesRead, new LineDecoder());
+    }
+
+    LineReader(ReadableByteChannel channel, LongAdder bytesRead, LineDecoder decoder) {
+        this.channel = channel;
+        this.bytesRead = bytesRead;
+        this.decoder = decoder;
+        buffer.limit(0);
+    }
+
+    // Devuelve la siguiente línea o null al llegar al final del flujo
+    String readLine() throws IOException {
+        while (true) {
+            String line = decoder.next(buffer);
+            if (line != null) {
+                return line;
+            }
+            buffer.clear();
+            int read = channel.read(buffer);
+            buffer.flip();
+            if (read < 0) {
+                return decoder.remaining();
+            }
+            if (bytesRead != null) {
+                bytesRead.add(read);
+            }
+        }
+    }
+}
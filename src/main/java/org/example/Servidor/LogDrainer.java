@@ -0,0 +1,73 @@
+package org.example.Servidor;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.locks.LockSupport;
+
+// Destino del log sin interfaz gráfica: un hilo vacía el LogRingBuffer por lotes y los
+// escribe en consola o en un fichero, con un flush por lote en lugar de uno por línea
+public class LogDrainer implements Runnable {
+
+    private static final int BATCH_SIZE = 1024;
+    private static final long IDLE_PARK_NANOS = 10_000_000L; // 10 ms
+
+    private final LogRingBuffer buffer;
+    private final Writer out;
+    private volatile boolean running = true;
+    private long reportedDropped = 0;
+
+    public LogDrainer(LogRingBuffer buffer, Writer out) {
+        this.buffer = buffer;
+        this.out = out;
+    }
+
+    // Arranca el drenado en un hilo daemon
+    public Thread start() {
+        Thread thread = new Thread(this, "chat-log");
+        thread.setDaemon(true);
+        thread.start();
+        return thread;
+    }
+
+    // Pide al hilo que termine tras escribir lo pendiente
+    public void stop() {
+        running = false;
+    }
+
+    @Override
+    public void run() {
+        List<String> batch = new ArrayList<>(BATCH_SIZE);
+        try {
+            while (running) {
+                if (writeBatch(batch) == 0) {
+                    LockSupport.parkNanos(IDLE_PARK_NANOS);
+                }
+            }
+            while (writeBatch(batch) > 0) {
+                // Vaciar lo que quede antes de terminar
+            }
+        } catch (IOException e) {
+            System.err.println("Error al escribir el log: " + e.getMessage());
+        }
+    }
+
+    private int writeBatch(List<String> batch) throws IOException {
+        batch.clear();
+        int count = buffer.drainTo(batch, BATCH_SIZE);
+        long dropped = buffer.getDropped();
+        if (dropped != reportedDropped) {
+            out.write("[" + (dropped - reportedDropped) + " líneas de log descartadas]" + System.lineSeparator());
+            reportedDropped = dropped;
+        }
+        for (String line : batch) {
+            out.write(line);
+            out.write(System.lineSeparator());
+        }
+        if (count > 0) {
+            out.flush();
+        }
+        return count;
+    }
+}
@@ -0,0 +1,75 @@
+package org.example.Servidor;
+
+import java.util.Collection;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+
+// Buffer circular sin bloqueos entre el núcleo del servidor y los destinos del log.
+// Varios hilos publican líneas (accept) y un único consumidor las recoge por lotes (drainTo).
+// Si el consumidor no da abasto, las líneas nuevas se descartan y se cuentan: el servidor
+// nunca espera por el log.
+public class LogRingBuffer implements Consumer<String> {
+
+    private final AtomicReferenceArray<String> slots;
+    private final AtomicLongArray sequences; // Secuencia esperada en cada posición
+    private final int mask;
+    private final AtomicLong tail = new AtomicLong(); // Siguiente posición a publicar
+    private long head = 0; // Siguiente posición a consumir (solo la usa el consumidor)
+    private final LongAdder dropped = new LongAdder();
+
+    public LogRingBuffer(int capacity) {
+        int size = Integer.highestOneBit(Math.max(2, capacity - 1)) << 1; // Potencia de dos
+        slots = new AtomicReferenceArray<>(size);
+        sequences = new AtomicLongArray(size);
+        for (int i = 0; i < size; i++) {
+            sequences.set(i, i);
+        }
+        mask = size - 1;
+    }
+
+    // Publica una línea; si el buffer está lleno se descarta
+    @Override
+    public void accept(String line) {
+        while (true) {
+            long position = tail.get();
+            int index = (int) (position & mask);
+            long difference = sequences.get(index) - position;
+            if (difference == 0) {
+                if (tail.compareAndSet(position, position + 1)) {
+                    slots.set(index, line);
+                    sequences.set(index, position + 1); // Publica la línea para el consumidor
+                    return;
+                }
+            } else if (difference < 0) {
+                dropped.increment(); // Lleno: el consumidor no ha liberado esta posición
+                return;
+            }
+            // Otro productor tomó esta posición; reintentar con la siguiente
+        }
+    }
+
+    // Mueve hasta max líneas a out; devuelve cuántas movió. Solo debe llamarlo un consumidor.
+    public int drainTo(Collection<? super String> out, int max) {
+        int count = 0;
+        while (count < max) {
+            int index = (int) (head & mask);
+            if (sequences.get(index) != head + 1) {
+                break; // Posición aún no publicada
+            }
+            out.add(slots.get(index));
+            slots.set(index, null);
+            sequences.set(index, head + mask + 1); // Libera la posición para la siguiente vuelta
+            head++;
+            count++;
+        }
+        return count;
+    }
+
+    // Total de líneas descartadas por tener el buffer lleno
+    public long getDropped() {
+        return dropped.sum();
+    }
+}
@@ -0,0 +1,418 @@
+package org.example.Servidor;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.locks.LockSupport;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.zip.CRC32;
+
+// Registro persistente de los mensajes de las salas, en segmentos de tamaño fijo proyectados en memoria.
+//
+// Registro: int longitud | int CRC32 | long secuencia | long instante (ms) | byte longitud de la sala | sala | trama de texto
+// El CRC32 cubre todo lo que va detrás de él; al recuperar, el primer registro que no cuadra marca el final.
+// La trama es la misma línea "color|nombre: mensaje\n" que reciben los clientes de texto, así una
+// reproducción envía vistas de solo lectura del propio segmento sin copiar los bytes.
+//
+// Añadir un mensaje solo copia bytes al segmento proyectado bajo un lock; un hilo aparte hace
+// force() de lo pendiente cada flushMillis (group commit), así el broadcast nunca espera al disco.
+// Un corte de luz puede perder como mucho el último intervalo; una caída del proceso no pierde nada.
+// Tras un corte, las páginas del segmento pueden haber llegado al disco en cualquier orden: la
+// longitud puede estar escrita y el resto no. Por eso no basta con que la longitud vaya la última.
+final class MessageLog implements Closeable {
+
+    private static final String SUFFIX = ".log";
+    private static final int RECORD_HEADER = 4 + 4 + 8 + 8 + 1;
+    private static final int INDEX_INTERVAL = 64; // Un registro de cada INDEX_INTERVAL va al índice disperso
+
+    // Un mensaje leído del registro; payload es una vista de solo lectura del segmento
+    record Entry(long sequence, ByteBuffer payload) {
+    }
+
+    private final Path directory;
+    private final int segmentBytes;
+    private final int maxSegments;
+    private final int tailSize;
+    private final ReentrantLock lock = new ReentrantLock();
+    private final List<Segment> segments = new ArrayList<>(); // Ordenados por secuencia; el último es el activo
+    private final CRC32 checksum = new CRC32(); // Con el lock tomado (o durante la recuperación)
+    private final Map<String, ArrayDeque<Entry>> tails = new HashMap<>(); // Últimos tailSize mensajes por sala, solo de los segmentos que quedan
+    private long nextSequence = 1;
+    private final Thread flusher;
+    private volatile boolean open = true;
+
+    private static final class Segment {
+        final Path path;
+        final long baseSequence;
+        final FileChannel channel;
+        final MappedByteBuffer buffer;
+        volatile int committed = 0; // Bytes con registros completos; los lectores no pasan de aquí
+        int forced = 0;             // Bytes ya enviados al disco con force()
+        long lastSequence;
+        long[] indexSequences = new long[16];
+        int[] indexPositions = new int[16];
+        int indexSize = 0;
+        int records = 0;
+
+        Segment(Path path, long baseSequence, int size) throws IOException {
+            this.path = path;
+            this.baseSequence = baseSequence;
+            this.lastSequence = baseSequence - 1;
+            this.channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+            this.buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, Math.max(size, channel.size()));
+        }
+
+        void indexRecord(long sequence, int position) {
+            if (records++ % INDEX_INTERVAL == 0) {
+                if (indexSize == indexSequences.length) {
+                    indexSequences = Arrays.copyOf(indexSequences, indexSize * 2);
+                    indexPositions = Arrays.copyOf(indexPositions, indexSize * 2);
+                }
+                indexSequences[indexSize] = sequence;
+                indexPositions[indexSize++] = position;
+            }
+            lastSequence = sequence;
+        }
+
+        // Posición del último registro indexado con secuencia <= sequence
+        int positionFor(long sequence) {
+            int low = 0;
+            int high = indexSize - 1;
+            int position = 0;
+            while (low <= high) {
+                int mid = (low + high) >>> 1;
+                if (indexSequences[mid] <= sequence) {
+                    position = indexPositions[mid];
+                    low = mid + 1;
+                } else {
+                    high = mid - 1;
+                }
+            }
+            return position;
+        }
+
+        void close() throws IOException {
+            channel.close();
+        }
+    }
+
+    private MessageLog(Path directory, int segmentBytes, int maxSegments, int tailSize, long flushMillis) {
+        this.directory = directory;
+        this.segmentBytes = segmentBytes;
+        this.maxSegments = Math.max(1, maxSegments);
+        this.tailSize = tailSize;
+        this.flusher = new Thread(() -> flushLoop(flushMillis), "chat-history");
+        this.flusher.setDaemon(true);
+    }
+
+    // Abre (o crea) el registro en el directorio dado y recupera los segmentos existentes
+    static MessageLog open(Path directory, int segmentBytes, int maxSegments, int tailSize, long flushMillis) throws IOException {
+        Files.createDirectories(directory);
+        MessageLog log = new MessageLog(directory, segmentBytes, maxSegments, tailSize, flushMillis);
+        log.recover();
+        log.flusher.start();
+        return log;
+    }
+
+    private void recover() throws IOException {
+        List<Path> files = new ArrayList<>();
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory, "*" + SUFFIX)) {
+            for (Path file : stream) {
+                files.add(file);
+            }
+        }
+        files.sort(null); // Los nombres son la secuencia base con ceros a la izquierda
+        for (Path file : files) {
+            String name = file.getFileName().toString();
+            long base = Long.parseLong(name.substring(0, name.length() - SUFFIX.length()));
+            Segment segment = new Segment(file, base, segmentBytes);
+            scan(segment);
+            segments.add(segment);
+            nextSequence = Math.max(nextSequence, segment.lastSequence + 1);
+        }
+        if (segments.isEmpty()) {
+            roll();
+        }
+    }
+
+    // Recorre un segmento al abrirlo: reconstruye el índice disperso y las colas de cada sala.
+    // Se detiene en el primer hueco (longitud 0) o en el primer registro a medias (CRC32 distinto)
+    private void scan(Segment segment) {
+        ByteBuffer buffer = segment.buffer;
+        int position = 0;
+        long previous = segment.baseSequence - 1;
+        while (position + RECORD_HEADER <= buffer.capacity()) {
+            int length = buffer.getInt(position);
+            if (length < RECORD_HEADER - 4 || position + 4 + length > buffer.capacity()) {
+                break;
+            }
+            if (buffer.getInt(position + 4) != crc(buffer, position, length)) {
+                break;
+            }
+            long sequence = buffer.getLong(position + 8);
+            if (sequence <= previous) {
+                break;
+            }
+            segment.indexRecord(sequence, position);
+            int roomLength = buffer.get(position + 24) & 0xFF;
+            remember(new String(bytes(buffer, position + 25, roomLength), StandardCharsets.UTF_8), entry(segment, position, length));
+            previous = sequence;
+            position += 4 + length;
+        }
+        if (position + 4 <= buffer.capacity() && buffer.getInt(position) != 0) {
+            // Registro a medias: se borra desde aquí, o los registros de detrás que sí llegaron al
+            // disco volverían a aparecer tras los que se añadan ahora
+            for (int i = position; i < buffer.capacity(); i++) {
+                buffer.put(i, (byte) 0);
+            }
+            segment.buffer.force(position, buffer.capacity() - position);
+        }
+        segment.committed = position;
+        segment.forced = position;
+    }
+
+    // Añade la trama de texto de un mensaje de la sala y devuelve su secuencia (0 si no cabe en un segmento)
+    long append(String room, ByteBuffer textFrame) {
+        byte[] roomBytes = room.getBytes(StandardCharsets.UTF_8);
+        int payloadLength = textFrame.remaining();
+        int length = RECORD_HEADER - 4 + roomBytes.length + payloadLength;
+        if (roomBytes.length > 255 || 4 + length > segmentBytes) {
+            return 0;
+        }
+        lock.lock();
+        try {
+            if (!open) {
+                return 0;
+            }
+            Segment segment = segments.get(segments.size() - 1);
+            if (segment.committed + 4 + length > segment.buffer.capacity()) {
+                segment = roll();
+            }
+            long sequence = nextSequence++;
+            int position = segment.committed;
+            ByteBuffer buffer = segment.buffer;
+            buffer.putLong(position + 8, sequence);
+            buffer.putLong(position + 16, System.currentTimeMillis());
+            buffer.put(position + 24, (byte) roomBytes.length);
+            buffer.put(position + 25, roomBytes);
+            buffer.put(position + 25 + roomBytes.length, textFrame, textFrame.position(), payloadLength);
+            buffer.putInt(position + 4, crc(buffer, position, length));
+            buffer.putInt(position, length); // Al final: si el proceso cae a mitad, el registro queda con longitud 0
+            segment.indexRecord(sequence, position);
+            segment.committed = position + 4 + length;
+            remember(room, entry(segment, position, length));
+            return sequence;
+        } catch (IOException e) {
+            System.err.println("Error al crear un segmento del historial: " + e.getMessage());
+            return 0;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void remember(String room, Entry entry) {
+        if (tailSize <= 0) {
+            return;
+        }
+        ArrayDeque<Entry> tail = tails.computeIfAbsent(room, r -> new ArrayDeque<>(tailSize));
+        if (tail.size() == tailSize) {
+            tail.pollFirst();
+        }
+        tail.addLast(entry);
+    }
+
+    private static Entry entry(Segment segment, int position, int length) {
+        ByteBuffer buffer = segment.buffer;
+        int roomLength = buffer.get(position + 24) & 0xFF;
+        int payloadStart = position + RECORD_HEADER + roomLength;
+        int payloadLength = position + 4 + length - payloadStart;
+        return new Entry(buffer.getLong(position + 8), buffer.slice(payloadStart, payloadLength).asReadOnlyBuffer());
+    }
+
+    // CRC32 del registro desde la secuencia hasta el final
+    private int crc(ByteBuffer buffer, int position, int length) {
+        checksum.reset();
+        checksum.update(buffer.slice(position + 8, length - 4));
+        return (int) checksum.getValue();
+    }
+
+    private static byte[] bytes(ByteBuffer buffer, int position, int length) {
+        byte[] bytes = new byte[length];
+        buffer.get(position, bytes);
+        return bytes;
+    }
+
+    // Abre un segmento nuevo y elimina los más antiguos si se supera maxSegments (con el lock tomado)
+    private Segment roll() throws IOException {
+        Path path = directory.resolve(String.format("%020d%s", nextSequence, SUFFIX));
+        Segment segment = new Segment(path, nextSequence, segmentBytes);
+        segments.add(segment);
+        boolean removed = false;
+        while (segments.size() > maxSegments) {
+            Segment oldest = segments.remove(0);
+            oldest.close(); // Las vistas ya entregadas siguen siendo válidas hasta que el GC libere la proyección
+            Files.deleteIfExists(oldest.path);
+            removed = true;
+        }
+        if (removed) {
+            forgetBefore(segments.get(0).baseSequence);
+        }
+        return segment;
+    }
+
+    // Quita de las colas los mensajes de segmentos ya borrados, que retenían su proyección, y las
+    // colas que se quedan vacías: salas desaparecidas o sin mensajes en ningún segmento de los que quedan
+    private void forgetBefore(long firstSequence) {
+        Iterator<ArrayDeque<Entry>> iterator = tails.values().iterator();
+        while (iterator.hasNext()) {
+            ArrayDeque<Entry> tail = iterator.next();
+            while (!tail.isEmpty() && tail.peekFirst().sequence() < firstSequence) {
+                tail.pollFirst();
+            }
+            if (tail.isEmpty()) {
+                iterator.remove();
+            }
+        }
+    }
+
+    // Los últimos mensajes de una sala, del más antiguo al más reciente
+    List<Entry> tail(String room) {
+        lock.lock();
+        try {
+            ArrayDeque<Entry> tail = tails.get(room);
+            return tail == null ? List.of() : new ArrayList<>(tail);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // Mensajes de una sala con secuencia mayor que afterSequence; si hay más de max, los max más recientes
+    List<Entry> since(String room, long afterSequence, int max) {
+        List<Segment> snapshot;
+        int startPosition;
+        lock.lock();
+        try {
+            int first = 0;
+            while (first + 1 < segments.size() && segments.get(first + 1).baseSequence <= afterSequence + 1) {
+                first++;
+            }
+            snapshot = new ArrayList<>(segments.subList(first, segments.size()));
+            startPosition = snapshot.get(0).positionFor(afterSequence + 1);
+        } finally {
+            lock.unlock();
+        }
+
+        byte[] roomBytes = room.getBytes(StandardCharsets.UTF_8);
+        ArrayDeque<Entry> result = new ArrayDeque<>();
+        for (Segment segment : snapshot) {
+            ByteBuffer buffer = segment.buffer;
+            int end = segment.committed;
+            int position = segment == snapshot.get(0) ? startPosition : 0;
+            while (position < end) {
+                int length = buffer.getInt(position);
+                if (buffer.getLong(position + 8) > afterSequence && roomMatches(buffer, position, roomBytes)) {
+                    if (result.size() == max) {
+                        result.pollFirst();
+                    }
+                    result.addLast(entry(segment, position, length));
+                }
+                position += 4 + length;
+            }
+        }
+        return new ArrayList<>(result);
+    }
+
+    private static boolean roomMatches(ByteBuffer buffer, int position, byte[] room) {
+        if ((buffer.get(position + 24) & 0xFF) != room.length) {
+            return false;
+        }
+        for (int i = 0; i < room.length; i++) {
+            if (buffer.get(position + 25 + i) != room[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    long lastSequence() {
+        lock.lock();
+        try {
+            return nextSequence - 1;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // Group commit: un force() por intervalo para todos los mensajes añadidos desde el anterior
+    private void flushLoop(long flushMillis) {
+        while (open) {
+            LockSupport.parkNanos(flushMillis * 1_000_000L);
+            force();
+        }
+    }
+
+    // Normalmente solo el segmento activo tiene algo pendiente; tras un cambio de segmento, también el anterior
+    private void force() {
+        List<Segment> pending = new ArrayList<>(2);
+        List<int[]> ranges = new ArrayList<>(2);
+        lock.lock();
+        try {
+            for (Segment segment : segments) {
+                if (segment.committed > segment.forced) {
+                    pending.add(segment);
+                    ranges.add(new int[]{segment.forced, segment.committed - segment.forced});
+                    segment.forced = segment.committed;
+                }
+            }
+        } finally {
+            lock.unlock();
+        }
+        for (int i = 0; i < pending.size(); i++) {
+            int[] range = ranges.get(i);
+            pending.get(i).buffer.force(range[0], range[1]); // Fuera del lock: los append no esperan al disco
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        lock.lock();
+        try {
+            if (!open) {
+                return;
+            }
+            open = false;
+        } finally {
+            lock.unlock();
+        }
+        LockSupport.unpark(flusher);
+        try {
+            flusher.join(1000);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        lock.lock();
+        try {
+            for (Segment segment : segments) {
+                segment.buffer.force(segment.forced, segment.committed - segment.forced);
+                segment.close();
+            }
+            segments.clear();
+        } finally {
+            lock.unlock();
+        }
+    }
+}
@@ -0,0 +1,67 @@
+package org.example.Servidor;
+
+import java.util.Arrays;
+import java.util.concurrent.locks.ReentrantLock;
+
+// Etapas por las que pasa cada línea de un cliente ya registrado, en orden: las del núcleo al
+// principio (log, comandos), las añadidas con add() (filtros, moderación, enriquecimiento) y el
+// envío a la sala al final. Las etapas están en un array que se copia al añadir una, así que
+// recorrerlas no bloquea ni crea iteradores.
+final class MessagePipeline {
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final MessageStage fanOut;
+    private volatile MessageStage[] stages;
+    private final int fixedStages; // Etapas del núcleo antes de las añadidas con add()
+
+    MessagePipeline(MessageStage fanOut, MessageStage... first) {
+        MessageStage[] initial = Arrays.copyOf(first, first.length + 1);
+        initial[first.length] = fanOut;
+        this.fanOut = fanOut;
+        this.stages = initial;
+        this.fixedStages = first.length;
+    }
+
+    // Añade una etapa justo antes del envío a la sala, después de las añadidas antes
+    void add(MessageStage stage) {
+        lock.lock();
+        try {
+            MessageStage[] current = stages;
+            MessageStage[] updated = Arrays.copyOf(current, current.length + 1);
+            updated[current.length - 1] = stage;
+            updated[current.length] = fanOut;
+            stages = updated;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // Quita una etapa añadida con add(); devuelve false si no estaba
+    boolean remove(MessageStage stage) {
+        lock.lock();
+        try {
+            MessageStage[] current = stages;
+            for (int i = fixedStages; i < current.length - 1; i++) {
+                if (current[i] == stage) {
+                    MessageStage[] updated = new MessageStage[current.length - 1];
+                    System.arraycopy(current, 0, updated, 0, i);
+                    System.arraycopy(current, i + 1, updated, i, current.length - i - 1);
+                    stages = updated;
+                    return true;
+                }
+            }
+            return false;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // Pasa el mensaje por las etapas hasta que una lo resuelva
+    void process(ChatMessage message) {
+        for (MessageStage stage : stages) {
+            if (!stage.process(message)) {
+                return;
+            }
+        }
+    }
+}
@@ -0,0 +1,12 @@
+package org.example.Servidor;
+
+// Etapa del pipeline de mensajes entrantes (ver MessagePipeline). Se llama desde el hilo que lee
+// la conexión del remitente, así que varias conexiones pueden pasar a la vez por la misma etapa.
+// Se añaden con ChatServerCore.addStage, también desde fuera del paquete (filtros, moderación...).
+public interface MessageStage {
+
+    // Atiende el mensaje y devuelve true para pasarlo a la etapa siguiente o false si ya está
+    // resuelto (un comando, un mensaje descartado...). El mensaje se reutiliza para la siguiente
+    // línea de la conexión: no hay que guardar la referencia
+    boolean process(ChatMessage message);
+}
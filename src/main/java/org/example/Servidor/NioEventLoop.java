@@ -0,0 +1,473 @@
+package org.example.Servidor;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.*;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+// Bucle de eventos no bloqueante: atiende accept, lectura por líneas y escritura
+// de un subconjunto de los clientes con un único Selector
+class NioEventLoop implements Runnable {
+
+    private static final int READ_BUFFER_SIZE = 8192;
+    private static final int WRITE_BATCH = 16;
+
+    private final ChatServerCore core;
+    private final Selector selector;
+    private final Queue<SocketChannel> pendingChannels = new ConcurrentLinkedQueue<>();
+    private final Queue<NioConnection> pendingWrites = new ConcurrentLinkedQueue<>();
+    private final Queue<NioConnection> pendingCloses = new ConcurrentLinkedQueue<>();
+    private final ByteBuffer readBuffer = ByteBuffer.allocateDirect(READ_BUFFER_SIZE); // Compartido: solo lo usa este hilo
+    private final List<NioConnection> pausedReads = new ArrayList<>(); // Conexiones sin OP_READ por el límite de mensajes
+    // Conexiones en orden de llegada para vigilar el plazo del saludo: como el plazo es el mismo
+    // para todas, la primera es siempre la que vence antes
+    private final ArrayDeque<NioConnection> awaitingHello = new ArrayDeque<>();
+    private final long handshakeTimeoutNanos;
+    private volatile boolean running = true;
+    private Thread loopThread;
+
+    // Solo el bucle que acepta conexiones tiene estos campos
+    private ServerSocketChannel serverChannel;
+    private NioEventLoop[] workers;
+    private int nextWorker = 0;
+
+    NioEventLoop(ChatServerCore core) throws IOException {
+        this.core = core;
+        this.selector = Selector.open();
+        this.handshakeTimeoutNanos = core.getConfig().getHandshakeTimeoutMillis() * 1_000_000L;
+    }
+
+    // Registra el canal del servidor en este bucle y reparte las conexiones entre los bucles dados,
+    // empezando por firstWorker (varios bucles pueden aceptar del mismo canal o de uno propio)
+    void acceptFrom(ServerSocketChannel serverChannel, NioEventLoop[] workers, int firstWorker) throws IOException {
+        this.serverChannel = serverChannel;
+        this.workers = workers;
+        this.nextWorker = firstWorker % workers.length;
+        serverChannel.configureBlocking(false);
+        serverChannel.register(selector, SelectionKey.OP_ACCEPT);
+    }
+
+    // Entrega un canal recién aceptado a este bucle (puede llamarse desde otro hilo)
+    void register(SocketChannel channel) {
+        pendingChannels.add(channel);
+        wakeupIfForeign();
+    }
+
+    void stop() {
+        running = false;
+        selector.wakeup();
+    }
+
+    @Override
+    public void run() {
+        loopThread = Thread.currentThread();
+        try {
+            while (running) {
+                selector.select(selectTimeoutMillis());
+                resumePausedReads();
+                expireHandshakes();
+                registerPendingChannels();
+                processPendingWrites();
+                processPendingCloses();
+
+                Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+                while (keys.hasNext()) {
+                    SelectionKey key = keys.next();
+                    keys.remove();
+                    if (!key.isValid()) {
+                        continue;
+                    }
+                    if (key.isAcceptable()) {
+                        acceptConnections();
+                        continue;
+                    }
+                    NioConnection connection = (NioConnection) key.attachment();
+                    try {
+                        if (key.isReadable()) {
+                            connection.onReadable();
+                        }
+                        if (key.isValid() && key.isWritable()) {
+                            connection.onWritable();
+                        }
+                    } catch (IOException | CancelledKeyException e) {
+                        connection.close();
+                    }
+                }
+            }
+        } catch (IOException e) {
+            core.logMessage("Error en el bucle de eventos NIO: " + e.getMessage());
+        } finally {
+            closeAll();
+        }
+    }
+
+    private void acceptConnections() throws IOException {
+        SocketChannel channel;
+        while ((channel = serverChannel.accept()) != null) { // Sin log por conexión: ver ChatServerCore.acceptLoop
+            if (!core.admitConnection(channel)) {
+                continue;
+            }
+            NioEventLoop worker = workers[nextWorker];
+            nextWorker = (nextWorker + 1) % workers.length;
+            if (worker == this) {
+                attach(channel);
+            } else {
+                worker.register(channel);
+            }
+        }
+    }
+
+    // Hasta la próxima conexión que pueda volver a leer o cuyo saludo venza; 0 (sin límite) si no hay ninguna
+    private long selectTimeoutMillis() {
+        NioConnection oldest = awaitingHello.peek();
+        if (pausedReads.isEmpty() && oldest == null) {
+            return 0;
+        }
+        long earliest = oldest != null ? oldest.acceptedAt + handshakeTimeoutNanos : Long.MAX_VALUE;
+        for (NioConnection connection : pausedReads) {
+            earliest = Math.min(earliest, connection.resumeAt);
+        }
+        return Math.max(1, (earliest - System.nanoTime() + 999_999) / 1_000_000);
+    }
+
+    // Cierra las conexiones que no enviaron su nombre a tiempo y olvida las que ya lo hicieron
+    private void expireHandshakes() {
+        long now = System.nanoTime();
+        NioConnection connection;
+        while ((connection = awaitingHello.peek()) != null) {
+            if (connection.info == null && !connection.closed.get()) {
+                if (now - connection.acceptedAt < handshakeTimeoutNanos) {
+                    return;
+                }
+                core.handshakeTimedOut(connection);
+            }
+            awaitingHello.poll();
+        }
+    }
+
+    private void resumePausedReads() {
+        if (pausedReads.isEmpty()) {
+            return;
+        }
+        long now = System.nanoTime();
+        List<NioConnection> due = new ArrayList<>();
+        pausedReads.removeIf(connection -> connection.resumeAt <= now && due.add(connection));
+        for (NioConnection connection : due) {
+            connection.resumeReading();
+        }
+    }
+
+    private void registerPendingChannels() {
+        SocketChannel channel;
+        while ((channel = pendingChannels.poll()) != null) {
+            attach(channel);
+        }
+    }
+
+    private void attach(SocketChannel channel) {
+        try {
+            channel.configureBlocking(false);
+            SelectionKey key = channel.register(selector, SelectionKey.OP_READ);
+            NioConnection connection = new NioConnection(channel, key, core.newTlsChannel(channel));
+            key.attach(connection);
+            if (handshakeTimeoutNanos > 0) {
+                awaitingHello.add(connection);
+            }
+            connection.send(ChatServerCore.WELCOME_PROMPT);
+        } catch (IOException e) {
+            core.logMessage("Error al registrar el cliente: " + e.getMessage());
+            try {
+                channel.close();
+            } catch (IOException ignored) {
+                // Ignorar errores al cerrar
+            }
+            core.connectionClosed();
+        }
+    }
+
+    private void processPendingWrites() {
+        NioConnection connection;
+        while ((connection = pendingWrites.poll()) != null) {
+            connection.writeScheduled.set(false);
+            SelectionKey key = connection.key;
+            if (key.isValid()) {
+                key.interestOps(key.interestOps() | SelectionKey.OP_WRITE);
+            }
+        }
+    }
+
+    private void processPendingCloses() {
+        NioConnection connection;
+        while ((connection = pendingCloses.poll()) != null) {
+            connection.close();
+        }
+    }
+
+    private void closeAll() {
+        for (SelectionKey key : selector.keys()) {
+            Object attachment = key.attachment();
+            if (attachment instanceof NioConnection connection) {
+                connection.close();
+            }
+        }
+        SocketChannel channel;
+        while ((channel = pendingChannels.poll()) != null) {
+            try {
+                channel.close();
+            } catch (IOException ignored) {
+                // Ignorar errores al cerrar
+            }
+            core.connectionClosed();
+        }
+        try {
+            selector.close();
+        } catch (IOException e) {
+            core.logMessage("Error al cerrar el selector: " + e.getMessage());
+        }
+    }
+
+    private void wakeupIfForeign() {
+        if (Thread.currentThread() != loopThread) {
+            selector.wakeup();
+        }
+    }
+
+    // Conexión de un cliente atendida por este bucle
+    private class NioConnection implements ClientConnection {
+        private final SocketChannel channel;
+        private final SelectionKey key;
+        private final TlsChannel tls; // null sin TLS
+        private final OutboundQueue outbound = core.newOutboundQueue();
+        private final ByteBuffer[] writing = new ByteBuffer[WRITE_BATCH]; // Tramas ya fuera de la cola
+        private int writeOffset = 0;
+        private int writeCount = 0;
+        private final AtomicBoolean writeScheduled = new AtomicBoolean();
+        private final AtomicBoolean closed = new AtomicBoolean();
+        private final LineDecoder decoder = core.newLineDecoder(this);
+        private final InboundLimiter limiter = core.newInboundLimiter();
+        private String heldLine;     // Línea que espera un token del límite de mensajes
+        private ByteBuffer heldBytes; // Lo leído tras heldLine, que aún no se ha decodificado
+        private long resumeAt;
+        private final long acceptedAt = System.nanoTime();
+        private volatile ChatServerCore.ClientInfo info; // null hasta completar el saludo
+
+        NioConnection(SocketChannel channel, SelectionKey key, TlsChannel tls) {
+            this.channel = channel;
+            this.key = key;
+            this.tls = tls;
+        }
+
+        @Override
+        public ChatServerCore.ClientInfo info() {
+            return info;
+        }
+
+        @Override
+        public void setInfo(ChatServerCore.ClientInfo info) {
+            this.info = info;
+        }
+
+        @Override
+        public int pendingFrames() {
+            return outbound.size() + (writeCount - writeOffset);
+        }
+
+        @Override
+        public void sendFrame(ByteBuffer frame, boolean required) {
+            if (closed.get()) {
+                return;
+            }
+            if (!outbound.offer(frame.duplicate(), required)) {
+                outbound.close(); // Las tramas siguientes se ignoran hasta que el bucle cierre la conexión
+                core.slowConsumerDisconnected(info);
+                close();
+                return;
+            }
+            if (Thread.currentThread() == loopThread) {
+                if (key.isValid()) {
+                    key.interestOps(key.interestOps() | SelectionKey.OP_WRITE);
+                }
+            } else if (writeScheduled.compareAndSet(false, true)) {
+                pendingWrites.add(this);
+                selector.wakeup();
+            }
+        }
+
+        void onReadable() throws IOException {
+            if (tls != null) {
+                onSecureReadable();
+                return;
+            }
+            readBuffer.clear();
+            int read = channel.read(readBuffer);
+            if (read < 0) {
+                close();
+                return;
+            }
+            core.getMetrics().bytesIn.add(read);
+            readBuffer.flip();
+            consume(readBuffer);
+        }
+
+        // Con TLS un registro puede traer más de lo que cabe en readBuffer: se descifra hasta que el
+        // canal no tenga nada más (o hasta que el límite de mensajes pause la lectura)
+        private void onSecureReadable() throws IOException {
+            int read;
+            do {
+                readBuffer.clear();
+                read = tls.read(readBuffer);
+                if (read < 0) {
+                    close();
+                    return;
+                }
+                core.getMetrics().bytesIn.add(read);
+                readBuffer.flip();
+                consume(readBuffer);
+            } while (read > 0 && heldLine == null && !closed.get());
+            // Al acabar el handshake (o si quedó cifrado sin enviar) hay que volver a escribir
+            if (key.isValid() && (tls.hasPendingOutput() || !tls.isHandshaking() && pendingFrames() > 0)) {
+                key.interestOps(key.interestOps() | SelectionKey.OP_WRITE);
+            }
+        }
+
+        // Procesa las líneas completas de src; si el límite de mensajes lo impide, guarda la línea
+        // y el resto de src y deja de leer del socket hasta que haya un token
+        private void consume(ByteBuffer src) {
+            String line;
+            while (!closed.get() && (line = decoder.next(src)) != null) {
+                long wait = info != null ? limiter.admit() : 0; // El saludo no cuenta
+                if (wait > 0) {
+                    pauseReading(line, src, wait);
+                    return;
+                }
+                onLine(line);
+            }
+        }
+
+        private void pauseReading(String line, ByteBuffer src, long waitNanos) {
+            heldLine = line;
+            heldBytes = ByteBuffer.allocate(src.remaining()).put(src).flip(); // src puede ser el buffer compartido
+            resumeAt = System.nanoTime() + waitNanos;
+            if (key.isValid()) {
+                key.interestOps(key.interestOps() & ~SelectionKey.OP_READ);
+            }
+            pausedReads.add(this);
+        }
+
+        void resumeReading() {
+            if (closed.get()) {
+                return;
+            }
+            long wait = limiter.admit();
+            if (wait > 0) {
+                resumeAt = System.nanoTime() + wait;
+                pausedReads.add(this);
+                return;
+            }
+            String line = heldLine;
+            ByteBuffer rest = heldBytes;
+            heldLine = null;
+            heldBytes = null;
+            onLine(line);
+            consume(rest);
+            if (heldLine == null && !closed.get() && key.isValid()) {
+                key.interestOps(key.interestOps() | SelectionKey.OP_READ);
+                if (tls != null && tls.hasBufferedInput()) {
+                    try {
+                        onSecureReadable(); // Lo ya descifrado no volverá a despertar al selector
+                    } catch (IOException e) {
+                        close();
+                    }
+                }
+            }
+        }
+
+        private void onLine(String line) {
+            if (info == null) {
+                info = core.registerClient(this, line);
+                core.getMetrics().handshakeNanos.record(System.nanoTime() - acceptedAt);
+            } else if (!core.handleClientLine(this, info, line)) {
+                close();
+            }
+        }
+
+        void onWritable() throws IOException {
+            if (tls != null) {
+                if (!tls.flush()) {
+                    return; // Sigue pendiente lo cifrado; esperar al próximo OP_WRITE
+                }
+                if (tls.isHandshaking()) {
+                    // Hasta que acabe el handshake no se puede cifrar nada; onSecureReadable vuelve a pedir OP_WRITE
+                    key.interestOps(key.interestOps() & ~SelectionKey.OP_WRITE);
+                    return;
+                }
+            }
+            while (true) {
+                if (writeOffset == writeCount) {
+                    writeOffset = 0;
+                    writeCount = outbound.drainTo(writing);
+                    if (writeCount == 0) {
+                        break;
+                    }
+                }
+                ServerMetrics metrics = core.getMetrics();
+                long written = tls != null
+                        ? tls.write(writing, writeOffset, writeCount - writeOffset)
+                        : channel.write(writing, writeOffset, writeCount - writeOffset); // Escritura agrupada
+                metrics.bytesOut.add(written);
+                metrics.socketWrites.increment();
+                int firstUnwritten = writeOffset;
+                while (writeOffset < writeCount && !writing[writeOffset].hasRemaining()) {
+                    writing[writeOffset++] = null;
+                }
+                metrics.messagesOut.add(writeOffset - firstUnwritten);
+                if (writeOffset < writeCount) {
+                    return; // El socket está lleno; esperar al próximo OP_WRITE
+                }
+            }
+            if (tls != null && tls.hasPendingOutput()) {
+                return; // Todo cifrado, pero parte sin escribir en el socket
+            }
+            key.interestOps(key.interestOps() & ~SelectionKey.OP_WRITE);
+            // Volver a comprobar por si se encoló algo mientras se quitaba el interés
+            if (!outbound.isEmpty()) {
+                key.interestOps(key.interestOps() | SelectionKey.OP_WRITE);
+            }
+        }
+
+        // Si se llama desde otro hilo (p. ej. un broadcast que detecta un cliente lento),
+        // el cierre se delega al bucle para no dar de baja al cliente en mitad del broadcast
+        @Override
+        public void close() {
+            if (Thread.currentThread() != loopThread && running) {
+                pendingCloses.add(this);
+                selector.wakeup();
+                return;
+            }
+            if (!closed.compareAndSet(false, true)) {
+                return;
+            }
+            outbound.close();
+            key.cancel();
+            try {
+                if (tls != null) {
+                    tls.close(); // Intenta enviar close_notify antes de cerrar el socket
+                } else {
+                    channel.close();
+                }
+            } catch (IOException e) {
+                core.logMessage("Error al cerrar el socket del cliente: " + e.getMessage());
+            }
+            if (info != null) {
+                core.unregisterClient(this, info);
+            }
+            core.connectionClosed();
+        }
+    }
+}
@@ -0,0 +1,163 @@
+package org.example.Servidor;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.Set;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+// Cola de salida acotada de un cliente. Los broadcasts solo encolan aquí; cada conexión
+// la vacía con su propio escritor, así un cliente lento no frena al resto.
+// Las tramas marcadas como imprescindibles (otras dependen de ellas: la presentación de un remitente,
+// los trozos de un flujo comprimido) no se descartan nunca; si hace falta superan la capacidad.
+class OutboundQueue {
+
+    private final ArrayDeque<ByteBuffer> frames;
+    private final Set<ByteBuffer> required = Collections.newSetFromMap(new IdentityHashMap<>()); // Por identidad: cada conexión encola su propio duplicate()
+    private final int capacity;
+    private final ServerConfig.OverflowPolicy policy;
+    private final LongAdder overflows; // Veces que se aplicó la política, en las métricas de su servidor
+    private final ReentrantLock lock = new ReentrantLock(); // Sin synchronized: no fija hilos virtuales
+    private final Condition notEmpty = lock.newCondition();
+    private boolean closed = false;
+
+    OutboundQueue(int capacity, ServerConfig.OverflowPolicy policy, LongAdder overflows) {
+        this.capacity = capacity;
+        this.policy = policy;
+        this.overflows = overflows;
+        this.frames = new ArrayDeque<>(Math.min(capacity, 16));
+    }
+
+    // Encola una trama; devuelve false si la cola está llena y la política es desconectar
+    boolean offer(ByteBuffer frame) {
+        return offer(frame, false);
+    }
+
+    // Con isRequired, la trama no se descarta: DROP_NEWEST la encola igualmente y DROP_OLDEST descarta
+    // la trama más antigua que no sea imprescindible. DISCONNECT desconecta como con cualquier otra
+    boolean offer(ByteBuffer frame, boolean isRequired) {
+        lock.lock();
+        try {
+            if (closed) {
+                return true;
+            }
+            if (frames.size() >= capacity) {
+                if (policy == ServerConfig.OverflowPolicy.DISCONNECT) {
+                    overflows.increment();
+                    return false;
+                }
+                boolean dropped = policy == ServerConfig.OverflowPolicy.DROP_OLDEST && dropOldest();
+                if (dropped || !isRequired) {
+                    overflows.increment();
+                }
+                if (!dropped && !isRequired) {
+                    return true; // DROP_NEWEST, o DROP_OLDEST con solo tramas imprescindibles en la cola
+                }
+            }
+            frames.addLast(frame);
+            if (isRequired) {
+                required.add(frame);
+            }
+            notEmpty.signal();
+            return true;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // Descarta la trama más antigua que se pueda descartar; devuelve false si no hay ninguna
+    private boolean dropOldest() {
+        if (required.isEmpty()) {
+            return frames.pollFirst() != null;
+        }
+        for (Iterator<ByteBuffer> it = frames.iterator(); it.hasNext(); ) {
+            if (!required.contains(it.next())) {
+                it.remove();
+                return true;
+            }
+        }
+        return false;
+    }
+
+    // Mueve hasta dst.length tramas a dst sin esperar; devuelve cuántas movió
+    int drainTo(ByteBuffer[] dst) {
+        lock.lock();
+        try {
+            return drainLocked(dst);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // Como drainTo, pero espera a que haya al menos una trama; devuelve 0 cuando la cola se cierra
+    int takeBatch(ByteBuffer[] dst) throws InterruptedException {
+        return takeBatch(dst, 0);
+    }
+
+    // Con una sola trama pendiente (cliente ocioso) la devuelve enseguida. Si hay varias, hay una
+    // ráfaga en curso: espera como mucho coalesceNanos a llenar dst para escribirlo con una sola llamada
+    int takeBatch(ByteBuffer[] dst, long coalesceNanos) throws InterruptedException {
+        lock.lock();
+        try {
+            while (frames.isEmpty() && !closed) {
+                notEmpty.await();
+            }
+            if (coalesceNanos > 0 && frames.size() > 1) {
+                long remaining = coalesceNanos;
+                while (frames.size() < dst.length && remaining > 0 && !closed) {
+                    remaining = notEmpty.awaitNanos(remaining);
+                }
+            }
+            return closed ? 0 : drainLocked(dst);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private int drainLocked(ByteBuffer[] dst) {
+        int count = 0;
+        while (count < dst.length && !frames.isEmpty()) {
+            ByteBuffer frame = frames.pollFirst();
+            if (!required.isEmpty()) {
+                required.remove(frame);
+            }
+            dst[count++] = frame;
+        }
+        return count;
+    }
+
+    boolean isEmpty() {
+        lock.lock();
+        try {
+            return frames.isEmpty();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    int size() {
+        lock.lock();
+        try {
+            return frames.size();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // Descarta lo pendiente y despierta al escritor
+    void close() {
+        lock.lock();
+        try {
+            closed = true;
+            frames.clear();
+            required.clear();
+            notEmpty.signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+}
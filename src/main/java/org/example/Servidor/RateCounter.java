@@ -0,0 +1,44 @@
+package org.example.Servidor;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+// Eventos por segundo en un anillo de casillas de un segundo, indexadas por System.nanoTime().
+// Quien registra un evento en un segundo nuevo vacía su casilla; leer no cambia nada, así varios
+// lectores (JMX, HTTP, GUI) ven el mismo valor sin depender de cada cuánto consultan.
+// Cada casilla guarda en un long el segundo (32 bits altos) y la cuenta (32 bajos): un solo CAS.
+final class RateCounter {
+
+    private static final int SLOTS = 4;
+    private static final long SECOND_NANOS = 1_000_000_000L;
+    private static final long COUNT_MASK = 0xffffffffL;
+
+    private final long origin = System.nanoTime();
+    private final AtomicLongArray slots = new AtomicLongArray(SLOTS);
+
+    void increment() {
+        long second = currentSecond();
+        int slot = (int) (second % SLOTS);
+        while (true) {
+            long current = slots.get(slot);
+            long slotSecond = current >>> 32;
+            if (slotSecond > second) {
+                return; // Este hilo se quedó parado más de SLOTS segundos; su evento ya no cuenta
+            }
+            long next = slotSecond == second ? current + 1 : second << 32 | 1;
+            if (slots.compareAndSet(slot, current, next)) {
+                return;
+            }
+        }
+    }
+
+    // Eventos del último segundo completo
+    long lastSecond() {
+        long previous = currentSecond() - 1;
+        long value = slots.get((int) (previous % SLOTS));
+        return value >>> 32 == previous ? value & COUNT_MASK : 0;
+    }
+
+    private long currentSecond() {
+        return (System.nanoTime() - origin) / SECOND_NANOS + 1; // Desde 1: una casilla a 0 es "ningún segundo"
+    }
+}
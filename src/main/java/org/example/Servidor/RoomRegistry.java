@@ -0,0 +1,91 @@
+package org.example.Servidor;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+// Registro de salas de chat. Cada sala indexa a sus miembros, así un broadcast solo recorre
+// la sala del remitente. Las altas y bajas usan compute() del ConcurrentHashMap, que solo
+// bloquea el cubo de esa sala: no compiten con los broadcasts ni con otras salas.
+// Aparte, cada nombre de sala tiene un cerrojo de publicación (ver publishLock).
+class RoomRegistry {
+
+    static final String DEFAULT_ROOM = "general";
+    static final int MAX_ROOM_NAME_LENGTH = 32;
+    private static final int PUBLISH_LOCK_STRIPES = 64;
+
+    private final ConcurrentHashMap<String, Room> rooms = new ConcurrentHashMap<>();
+    private final ReentrantReadWriteLock[] publishLocks = new ReentrantReadWriteLock[PUBLISH_LOCK_STRIPES];
+
+    static class Room {
+        final String name;
+        final Set<ClientConnection> members = ConcurrentHashMap.newKeySet(); // Iterable sin bloqueos
+
+        Room(String name) {
+            this.name = name;
+        }
+    }
+
+    RoomRegistry() {
+        rooms.put(DEFAULT_ROOM, new Room(DEFAULT_ROOM));
+        for (int i = 0; i < publishLocks.length; i++) {
+            publishLocks[i] = new ReentrantReadWriteLock();
+        }
+    }
+
+    // Cerrojo de publicación de la sala, por nombre para que sobreviva a que la sala se vacíe y se vuelva
+    // a crear. Los envíos (historial y reparto) lo toman compartido y no compiten entre sí; la entrada de
+    // un miembro con su historial, en exclusiva. Varias salas pueden compartir cerrojo
+    ReentrantReadWriteLock publishLock(String roomName) {
+        return publishLocks[(roomName.hashCode() & 0x7fffffff) % PUBLISH_LOCK_STRIPES];
+    }
+
+    // Añade la conexión a la sala, creándola si no existe
+    Room join(String roomName, ClientConnection connection) {
+        return rooms.compute(roomName, (name, room) -> {
+            if (room == null) {
+                room = new Room(name);
+            }
+            room.members.add(connection);
+            return room;
+        });
+    }
+
+    // Sala existente o null si no tiene miembros
+    Room find(String roomName) {
+        return rooms.get(roomName);
+    }
+
+    // Quita la conexión de la sala; las salas vacías (salvo la general) desaparecen
+    void leave(Room room, ClientConnection connection) {
+        rooms.computeIfPresent(room.name, (name, current) -> {
+            current.members.remove(connection);
+            return current.members.isEmpty() && !DEFAULT_ROOM.equals(name) ? null : current;
+        });
+    }
+
+    // Nombres de las salas con su número de miembros, ordenadas por nombre
+    List<String> describe() {
+        List<String> descriptions = new ArrayList<>();
+        for (Room room : rooms.values()) {
+            descriptions.add(room.name + " (" + room.members.size() + ")");
+        }
+        Collections.sort(descriptions);
+        return descriptions;
+    }
+
+    static boolean isValidName(String roomName) {
+        if (roomName.isEmpty() || roomName.length() > MAX_ROOM_NAME_LENGTH) {
+            return false;
+        }
+        for (int i = 0; i < roomName.length(); i++) {
+            if (Character.isWhitespace(roomName.charAt(i)) || roomName.charAt(i) == '|') {
+                return false;
+            }
+        }
+        return true;
+    }
+}
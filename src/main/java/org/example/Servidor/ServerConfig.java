@@ -0,0 +1,575 @@
+package org.example.Servidor;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+
+// Configuración del servidor de chat.
+//
+// Cada opción tiene un nombre (p. ej. "bindAddress") que se puede dar, de menor a mayor prioridad:
+//   1. en un fichero de propiedades como chat.server.bindAddress (ruta en --config o CHAT_SERVER_CONFIG)
+//   2. en el entorno como CHAT_SERVER_BIND_ADDRESS
+//   3. como propiedad del sistema -Dchat.server.bindAddress
+//   4. en la línea de comandos como --bindAddress=...
+public class ServerConfig {
+
+    // Modelo de I/O del servidor
+    public enum Mode {
+        BLOCKING, // Un hilo por cliente con sockets bloqueantes
+        NIO       // Bucles de eventos con Selector, uno por núcleo
+    }
+
+    // Cómo se ejecutan los ClientHandler en modo bloqueante
+    public enum HandlerExecutor {
+        THREAD,  // Un hilo de plataforma nuevo por conexión (comportamiento original)
+        VIRTUAL, // Un hilo virtual por conexión
+        POOL     // Pool acotado de hilos de plataforma
+    }
+
+    // Qué hacer cuando la cola de salida de un cliente está llena
+    public enum OverflowPolicy {
+        DROP_OLDEST, // Descartar el mensaje más antiguo pendiente
+        DROP_NEWEST, // Descartar el mensaje nuevo
+        DISCONNECT   // Desconectar al cliente lento
+    }
+
+    private static final String PROPERTY_PREFIX = "chat.server.";
+    static final String ENV_PREFIX = "CHAT_SERVER_";
+
+    // Nombres de todas las opciones, para la ayuda y la lectura del entorno
+    static final String[] OPTIONS = {
+            "port", "bindAddress", "backlog", "acceptThreads", "handshakeTimeoutMillis", "sendBufferSize", "receiveBufferSize", "tcpNoDelay",
+            "maxConnections", "mode", "ioThreads", "executor", "poolSize",
+            "outboundQueueCapacity", "overflowPolicy", "drainTimeoutMillis", "logFile", "metricsPort", "jmx",
+            "historyDir", "historySegmentBytes", "historySegments", "historyReplay", "historyFlushMillis",
+            "nodeId", "clusterPort", "clusterPeers", "coalesceMicros", "sessionGraceMillis",
+            "maxLineLength", "logMessages", "clientRateLimit", "clientBurst", "globalRateLimit", "globalBurst",
+            "tlsKeyStore", "tlsKeyStorePassword", "tlsSessionCacheSize", "tlsSessionTimeoutSeconds",
+            "compressMinBytes"
+    };
+
+    private int port = 12345;
+    private String bindAddress = null; // null: todas las interfaces
+    private int backlog = 1024;        // El sistema lo recorta a su máximo (net.core.somaxconn en Linux)
+    private int acceptThreads = 1;     // Hilos que aceptan conexiones; con SO_REUSEPORT, un socket de escucha cada uno
+    private long handshakeTimeoutMillis = 60000; // Plazo para enviar el nombre tras conectar; 0: sin plazo. Holgado: en un cliente de texto lo escribe una persona
+    private int sendBufferSize = 0;    // 0: valor por defecto del sistema operativo
+    private int receiveBufferSize = 0;
+    private boolean tcpNoDelay = true;
+    private int maxConnections = 0;    // 0: sin límite
+    private Mode mode = Mode.BLOCKING;
+    private int ioThreads = Runtime.getRuntime().availableProcessors();
+    private HandlerExecutor handlerExecutor = HandlerExecutor.THREAD;
+    private int poolSize = 200;        // Modo POOL: hilos lectores (y otros tantos escritores); también limita las conexiones
+    private int outboundQueueCapacity = 1024;
+    private OverflowPolicy overflowPolicy = OverflowPolicy.DROP_OLDEST;
+    private long drainTimeoutMillis = 5000;
+    private String logFile = null;     // null: log por consola
+    private int metricsPort = 0;       // 0: sin endpoint HTTP de métricas
+    private boolean jmx = true;        // Registrar el MBean de métricas
+    private String historyDir = null;  // null: sin historial persistente
+    private int historySegmentBytes = 64 * 1024 * 1024;
+    private int historySegments = 8;   // Segmentos que se conservan; los más antiguos se borran
+    private int historyReplay = 20;    // Mensajes recientes de la sala que recibe quien entra
+    private long historyFlushMillis = 10; // Intervalo del group commit al disco
+    private long coalesceMicros = 50;  // Espera máxima para agrupar escrituras en ráfagas; 0: nunca esperar
+    private long sessionGraceMillis = 15000; // Plazo para reanudar una sesión; 0: sin sesiones
+    private int maxLineLength = 16 * 1024; // Bytes por línea entrante; las más largas se descartan. 0: sin límite
+    private boolean logMessages = true;    // Registrar en el log cada línea de chat recibida
+    private double clientRateLimit = 20;   // Mensajes por segundo de cada cliente; 0: sin límite
+    private int clientBurst = 40;          // Mensajes seguidos que se permiten por encima del ritmo
+    private double globalRateLimit = 0;    // Mensajes por segundo de todo el servidor; 0: sin límite
+    private int globalBurst = 0;           // 0: un segundo de globalRateLimit
+    private String tlsKeyStore = null;     // null: sin TLS (texto plano)
+    private String tlsKeyStorePassword = null;
+    private int tlsSessionCacheSize = 20000;    // Sesiones TLS 1.2 que se recuerdan para reanudarlas; 0: sin límite
+    private int tlsSessionTimeoutSeconds = 3600; // Vigencia de sesiones y tickets reanudables
+    private int compressMinBytes = 512; // Tramas menores no se comprimen aunque el cliente lo pida; 0: sin compresión
+    private String nodeId = null;      // null: identificador aleatorio al arrancar
+    private int clusterPort = 0;       // 0: sin clúster. Sin autenticación: solo en una red de confianza
+    private List<String> clusterPeers = List.of(); // host:puerto del resto de nodos; entrega exactamente una vez mientras el nodo de origen siga en marcha
+
+    // Crea una configuración a partir de las propiedades del sistema (-Dchat.server.*)
+    public static ServerConfig fromSystemProperties() {
+        ServerConfig config = new ServerConfig();
+        config.applySystemProperties();
+        return config;
+    }
+
+    // Combina fichero de propiedades, entorno, propiedades del sistema y argumentos, en ese orden
+    public static ServerConfig load(String[] args, Map<String, String> env) throws IOException {
+        ServerConfig config = new ServerConfig();
+
+        String configFile = env.get(ENV_PREFIX + "CONFIG");
+        for (String arg : args) {
+            if (arg.startsWith("--config=")) {
+                configFile = arg.substring("--config=".length());
+            }
+        }
+        if (configFile != null) {
+            Properties properties = new Properties();
+            try (InputStream in = Files.newInputStream(Path.of(configFile))) {
+                properties.load(in);
+            }
+            for (String name : properties.stringPropertyNames()) {
+                if (name.startsWith(PROPERTY_PREFIX)) {
+                    config.set(name.substring(PROPERTY_PREFIX.length()), properties.getProperty(name));
+                }
+            }
+        }
+
+        for (String option : OPTIONS) {
+            String value = env.get(ENV_PREFIX + toEnvName(option));
+            if (value != null) {
+                config.set(option, value);
+            }
+        }
+
+        config.applySystemProperties();
+
+        for (String arg : args) {
+            if (!arg.startsWith("--") || arg.startsWith("--config=")) {
+                continue;
+            }
+            int eq = arg.indexOf('=');
+            if (eq < 0) {
+                throw new IllegalArgumentException("Se esperaba --opcion=valor: " + arg);
+            }
+            config.set(arg.substring(2, eq), arg.substring(eq + 1));
+        }
+        return config;
+    }
+
+    private void applySystemProperties() {
+        for (String option : OPTIONS) {
+            String value = System.getProperty(PROPERTY_PREFIX + option);
+            if (value != null) {
+                set(option, value);
+            }
+        }
+    }
+
+    // Asigna una opción por nombre a partir de su valor en texto
+    public void set(String option, String value) {
+        String trimmed = value.trim();
+        try {
+            switch (option) {
+                case "port" -> setPort(Integer.parseInt(trimmed));
+                case "bindAddress" -> setBindAddress(trimmed.isEmpty() ? null : trimmed);
+                case "backlog" -> setBacklog(Integer.parseInt(trimmed));
+                case "acceptThreads" -> setAcceptThreads(Integer.parseInt(trimmed));
+                case "handshakeTimeoutMillis" -> setHandshakeTimeoutMillis(Long.parseLong(trimmed));
+                case "sendBufferSize" -> setSendBufferSize(Integer.parseInt(trimmed));
+                case "receiveBufferSize" -> setReceiveBufferSize(Integer.parseInt(trimmed));
+                case "tcpNoDelay" -> setTcpNoDelay(parseBoolean(option, trimmed));
+                case "maxConnections" -> setMaxConnections(Integer.parseInt(trimmed));
+                case "mode" -> setMode(parseEnum(option, trimmed, Mode.class));
+                case "ioThreads" -> setIoThreads(Integer.parseInt(trimmed));
+                case "executor" -> setHandlerExecutor(parseEnum(option, trimmed, HandlerExecutor.class));
+                case "poolSize" -> setPoolSize(Integer.parseInt(trimmed));
+                case "outboundQueueCapacity" -> setOutboundQueueCapacity(Integer.parseInt(trimmed));
+                case "overflowPolicy" -> setOverflowPolicy(parseEnum(option, trimmed, OverflowPolicy.class));
+                case "drainTimeoutMillis" -> setDrainTimeoutMillis(Long.parseLong(trimmed));
+                case "logFile" -> setLogFile(trimmed.isEmpty() ? null : trimmed);
+                case "metricsPort" -> setMetricsPort(Integer.parseInt(trimmed));
+                case "jmx" -> setJmx(parseBoolean(option, trimmed));
+                case "historyDir" -> setHistoryDir(trimmed.isEmpty() ? null : trimmed);
+                case "historySegmentBytes" -> setHistorySegmentBytes(Integer.parseInt(trimmed));
+                case "historySegments" -> setHistorySegments(Integer.parseInt(trimmed));
+                case "historyReplay" -> setHistoryReplay(Integer.parseInt(trimmed));
+                case "historyFlushMillis" -> setHistoryFlushMillis(Long.parseLong(trimmed));
+                case "coalesceMicros" -> setCoalesceMicros(Long.parseLong(trimmed));
+                case "sessionGraceMillis" -> setSessionGraceMillis(Long.parseLong(trimmed));
+                case "maxLineLength" -> setMaxLineLength(Integer.parseInt(trimmed));
+                case "logMessages" -> setLogMessages(parseBoolean(option, trimmed));
+                case "clientRateLimit" -> setClientRateLimit(Double.parseDouble(trimmed));
+                case "clientBurst" -> setClientBurst(Integer.parseInt(trimmed));
+                case "globalRateLimit" -> setGlobalRateLimit(Double.parseDouble(trimmed));
+                case "globalBurst" -> setGlobalBurst(Integer.parseInt(trimmed));
+                case "tlsKeyStore" -> setTlsKeyStore(trimmed.isEmpty() ? null : trimmed);
+                case "tlsKeyStorePassword" -> setTlsKeyStorePassword(value); // Sin recortar
+                case "tlsSessionCacheSize" -> setTlsSessionCacheSize(Integer.parseInt(trimmed));
+                case "tlsSessionTimeoutSeconds" -> setTlsSessionTimeoutSeconds(Integer.parseInt(trimmed));
+                case "compressMinBytes" -> setCompressMinBytes(Integer.parseInt(trimmed));
+                case "nodeId" -> setNodeId(trimmed.isEmpty() ? null : trimmed);
+                case "clusterPort" -> setClusterPort(Integer.parseInt(trimmed));
+                case "clusterPeers" -> setClusterPeers(parseList(trimmed));
+                default -> throw new IllegalArgumentException("Opción de configuración desconocida: " + option);
+            }
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Valor no válido para " + option + ": " + value, e);
+        }
+    }
+
+    // Solo "true" o "false": con Boolean.parseBoolean, "ture" o "1" pasarían por false sin avisar
+    private static boolean parseBoolean(String option, String value) {
+        if (value.equalsIgnoreCase("true")) {
+            return true;
+        }
+        if (value.equalsIgnoreCase("false")) {
+            return false;
+        }
+        throw new IllegalArgumentException("Valor no válido para " + option + ": " + value + " (se espera true o false)");
+    }
+
+    // Sin distinguir mayúsculas; Enum.valueOf fallaría con un mensaje que no dice qué opción ni qué valores valen
+    private static <E extends Enum<E>> E parseEnum(String option, String value, Class<E> type) {
+        for (E constant : type.getEnumConstants()) {
+            if (constant.name().equalsIgnoreCase(value)) {
+                return constant;
+            }
+        }
+        throw new IllegalArgumentException("Valor no válido para " + option + ": " + value
+                + " (se espera " + Arrays.toString(type.getEnumConstants()) + ")");
+    }
+
+    // "a:1, b:2" -> [a:1, b:2]
+    private static List<String> parseList(String value) {
+        List<String> items = new ArrayList<>();
+        for (String item : value.split(",")) {
+            if (!item.isBlank()) {
+                items.add(item.trim());
+            }
+        }
+        return items;
+    }
+
+    // "bindAddress" -> "BIND_ADDRESS"
+    static String toEnvName(String option) {
+        StringBuilder name = new StringBuilder();
+        for (int i = 0; i < option.length(); i++) {
+            char c = option.charAt(i);
+            if (Character.isUpperCase(c)) {
+                name.append('_');
+            }
+            name.append(Character.toUpperCase(c));
+        }
+        return name.toString();
+    }
+
+    public int getPort() {
+        return port;
+    }
+
+    public void setPort(int port) {
+        this.port = port;
+    }
+
+    public String getBindAddress() {
+        return bindAddress;
+    }
+
+    public void setBindAddress(String bindAddress) {
+        this.bindAddress = bindAddress;
+    }
+
+    public int getBacklog() {
+        return backlog;
+    }
+
+    public void setBacklog(int backlog) {
+        this.backlog = Math.max(0, backlog);
+    }
+
+    public int getAcceptThreads() {
+        return acceptThreads;
+    }
+
+    public void setAcceptThreads(int acceptThreads) {
+        this.acceptThreads = Math.max(1, acceptThreads);
+    }
+
+    public long getHandshakeTimeoutMillis() {
+        return handshakeTimeoutMillis;
+    }
+
+    public void setHandshakeTimeoutMillis(long handshakeTimeoutMillis) {
+        this.handshakeTimeoutMillis = Math.max(0, handshakeTimeoutMillis);
+    }
+
+    public int getSendBufferSize() {
+        return sendBufferSize;
+    }
+
+    public void setSendBufferSize(int sendBufferSize) {
+        this.sendBufferSize = Math.max(0, sendBufferSize);
+    }
+
+    public int getReceiveBufferSize() {
+        return receiveBufferSize;
+    }
+
+    public void setReceiveBufferSize(int receiveBufferSize) {
+        this.receiveBufferSize = Math.max(0, receiveBufferSize);
+    }
+
+    public boolean isTcpNoDelay() {
+        return tcpNoDelay;
+    }
+
+    public void setTcpNoDelay(boolean tcpNoDelay) {
+        this.tcpNoDelay = tcpNoDelay;
+    }
+
+    public int getMaxConnections() {
+        return maxConnections;
+    }
+
+    public void setMaxConnections(int maxConnections) {
+        this.maxConnections = Math.max(0, maxConnections);
+    }
+
+    public Mode getMode() {
+        return mode;
+    }
+
+    public void setMode(Mode mode) {
+        this.mode = mode;
+    }
+
+    public int getIoThreads() {
+        return ioThreads;
+    }
+
+    public void setIoThreads(int ioThreads) {
+        this.ioThreads = Math.max(1, ioThreads);
+    }
+
+    public HandlerExecutor getHandlerExecutor() {
+        return handlerExecutor;
+    }
+
+    public void setHandlerExecutor(HandlerExecutor handlerExecutor) {
+        this.handlerExecutor = handlerExecutor;
+    }
+
+    public int getPoolSize() {
+        return poolSize;
+    }
+
+    public void setPoolSize(int poolSize) {
+        this.poolSize = Math.max(1, poolSize);
+    }
+
+    public int getOutboundQueueCapacity() {
+        return outboundQueueCapacity;
+    }
+
+    public void setOutboundQueueCapacity(int outboundQueueCapacity) {
+        this.outboundQueueCapacity = Math.max(1, outboundQueueCapacity);
+    }
+
+    public OverflowPolicy getOverflowPolicy() {
+        return overflowPolicy;
+    }
+
+    public void setOverflowPolicy(OverflowPolicy overflowPolicy) {
+        this.overflowPolicy = overflowPolicy;
+    }
+
+    public long getDrainTimeoutMillis() {
+        return drainTimeoutMillis;
+    }
+
+    public void setDrainTimeoutMillis(long drainTimeoutMillis) {
+        this.drainTimeoutMillis = Math.max(0, drainTimeoutMillis);
+    }
+
+    public String getLogFile() {
+        return logFile;
+    }
+
+    public void setLogFile(String logFile) {
+        this.logFile = logFile;
+    }
+
+    public int getMetricsPort() {
+        return metricsPort;
+    }
+
+    public void setMetricsPort(int metricsPort) {
+        this.metricsPort = Math.max(0, metricsPort);
+    }
+
+    public boolean isJmx() {
+        return jmx;
+    }
+
+    public void setJmx(boolean jmx) {
+        this.jmx = jmx;
+    }
+
+    public String getHistoryDir() {
+        return historyDir;
+    }
+
+    public void setHistoryDir(String historyDir) {
+        this.historyDir = historyDir;
+    }
+
+    public int getHistorySegmentBytes() {
+        return historySegmentBytes;
+    }
+
+    public void setHistorySegmentBytes(int historySegmentBytes) {
+        this.historySegmentBytes = Math.max(64 * 1024, historySegmentBytes);
+    }
+
+    public int getHistorySegments() {
+        return historySegments;
+    }
+
+    public void setHistorySegments(int historySegments) {
+        this.historySegments = Math.max(1, historySegments);
+    }
+
+    public int getHistoryReplay() {
+        return historyReplay;
+    }
+
+    public void setHistoryReplay(int historyReplay) {
+        this.historyReplay = Math.max(0, historyReplay);
+    }
+
+    public long getHistoryFlushMillis() {
+        return historyFlushMillis;
+    }
+
+    public void setHistoryFlushMillis(long historyFlushMillis) {
+        this.historyFlushMillis = Math.max(1, historyFlushMillis);
+    }
+
+    public long getCoalesceMicros() {
+        return coalesceMicros;
+    }
+
+    public void setCoalesceMicros(long coalesceMicros) {
+        this.coalesceMicros = Math.max(0, coalesceMicros);
+    }
+
+    public long getSessionGraceMillis() {
+        return sessionGraceMillis;
+    }
+
+    public void setSessionGraceMillis(long sessionGraceMillis) {
+        this.sessionGraceMillis = Math.max(0, sessionGraceMillis);
+    }
+
+    public int getMaxLineLength() {
+        return maxLineLength;
+    }
+
+    public void setMaxLineLength(int maxLineLength) {
+        this.maxLineLength = Math.max(0, maxLineLength);
+    }
+
+    public boolean isLogMessages() {
+        return logMessages;
+    }
+
+    public void setLogMessages(boolean logMessages) {
+        this.logMessages = logMessages;
+    }
+
+    public double getClientRateLimit() {
+        return clientRateLimit;
+    }
+
+    public void setClientRateLimit(double clientRateLimit) {
+        this.clientRateLimit = Math.max(0, clientRateLimit);
+    }
+
+    public int getClientBurst() {
+        return clientBurst;
+    }
+
+    public void setClientBurst(int clientBurst) {
+        this.clientBurst = Math.max(1, clientBurst);
+    }
+
+    public double getGlobalRateLimit() {
+        return globalRateLimit;
+    }
+
+    public void setGlobalRateLimit(double globalRateLimit) {
+        this.globalRateLimit = Math.max(0, globalRateLimit);
+    }
+
+    public int getGlobalBurst() {
+        return globalBurst > 0 ? globalBurst : (int) Math.ceil(globalRateLimit);
+    }
+
+    public void setGlobalBurst(int globalBurst) {
+        this.globalBurst = Math.max(0, globalBurst);
+    }
+
+    public String getTlsKeyStore() {
+        return tlsKeyStore;
+    }
+
+    public void setTlsKeyStore(String tlsKeyStore) {
+        this.tlsKeyStore = tlsKeyStore;
+    }
+
+    public String getTlsKeyStorePassword() {
+        return tlsKeyStorePassword;
+    }
+
+    public void setTlsKeyStorePassword(String tlsKeyStorePassword) {
+        this.tlsKeyStorePassword = tlsKeyStorePassword;
+    }
+
+    public int getTlsSessionCacheSize() {
+        return tlsSessionCacheSize;
+    }
+
+    public void setTlsSessionCacheSize(int tlsSessionCacheSize) {
+        this.tlsSessionCacheSize = Math.max(0, tlsSessionCacheSize);
+    }
+
+    public int getTlsSessionTimeoutSeconds() {
+        return tlsSessionTimeoutSeconds;
+    }
+
+    public void setTlsSessionTimeoutSeconds(int tlsSessionTimeoutSeconds) {
+        this.tlsSessionTimeoutSeconds = Math.max(0, tlsSessionTimeoutSeconds);
+    }
+
+    public int getCompressMinBytes() {
+        return compressMinBytes;
+    }
+
+    public void setCompressMinBytes(int compressMinBytes) {
+        this.compressMinBytes = Math.max(0, compressMinBytes);
+    }
+
+    public String getNodeId() {
+        return nodeId;
+    }
+
+    public void setNodeId(String nodeId) {
+        this.nodeId = nodeId;
+    }
+
+    public int getClusterPort() {
+        return clusterPort;
+    }
+
+    public void setClusterPort(int clusterPort) {
+        this.clusterPort = Math.max(0, clusterPort);
+    }
+
+    public List<String> getClusterPeers() {
+        return clusterPeers;
+    }
+
+    public void setClusterPeers(List<String> clusterPeers) {
+        this.clusterPeers = List.copyOf(clusterPeers);
+    }
+}
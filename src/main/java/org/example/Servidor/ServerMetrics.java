@@ -0,0 +1,294 @@
+package org.example.Servidor;
+
+import java.util.concurrent.atomic.LongAdder;
+
+// Contadores y medidores del servidor. Los contadores son LongAdder para que los hilos de I/O
+// no compitan por una misma línea de caché; los medidores (conexiones, colas) se calculan al leerlos.
+// Se publican por JMX, en texto plano por HTTP (MetricsHttpServer) y en el panel de ChatServerGUI.
+public class ServerMetrics implements ServerMetricsMBean {
+
+    private final ChatServerCore core;
+
+    final LongAdder accepted = new LongAdder();
+    final RateCounter acceptRate = new RateCounter();
+    final LongAdder rejected = new LongAdder();
+    final LongAdder handshakeTimeouts = new LongAdder(); // Conexiones cerradas por no enviar el nombre a tiempo
+    final LongAdder tlsHandshakes = new LongAdder();        // Handshakes TLS completados (completos o reanudados)
+    final LongAdder tlsHandshakeFailures = new LongAdder(); // Conexiones que fallaron en el handshake TLS
+    final LongAdder messagesIn = new LongAdder();  // Líneas recibidas de clientes ya registrados
+    final LongAdder messagesOut = new LongAdder(); // Tramas escritas por completo en un socket
+    final LongAdder bytesIn = new LongAdder();
+    final LongAdder bytesOut = new LongAdder();
+    final LongAdder socketWrites = new LongAdder(); // Llamadas a write() sobre sockets de clientes
+    final LongAdder broadcasts = new LongAdder();
+    final LongAdder slowConsumerDisconnects = new LongAdder();
+    final LongAdder clientRateLimited = new LongAdder(); // Mensajes retenidos por el límite de su cliente
+    final LongAdder globalRateLimited = new LongAdder(); // Mensajes retenidos por el límite global
+    final LongAdder linesTooLong = new LongAdder();      // Líneas descartadas por superar maxLineLength
+    final LongAdder clusterOut = new LongAdder();        // Mensajes reenviados a otros nodos (uno por par)
+    final LongAdder clusterIn = new LongAdder();         // Mensajes de otros nodos entregados aquí
+    final LongAdder clusterDuplicates = new LongAdder(); // Mensajes de otros nodos descartados por repetidos
+    final LongAdder clusterDropped = new LongAdder();    // Mensajes no reenviados por tener llena la cola de un par
+    final LongAdder compressedFrames = new LongAdder();      // Tramas DEFLATED y DEFLATE_STREAM generadas
+    final LongAdder compressionBytesIn = new LongAdder();    // Bytes antes de comprimir (una vez por trama comprimida)
+    final LongAdder compressionBytesOut = new LongAdder();   // Bytes después de comprimir
+    final LongAdder compressionSavedBytes = new LongAdder(); // Bytes que no se enviaron, sumando todos los destinatarios
+    final LongAdder compressionNanos = new LongAdder();      // CPU de compresión, incluidos los intentos que no reducen
+    final LongAdder[] overflows = new LongAdder[ServerConfig.OverflowPolicy.values().length]; // Por política
+    final LatencyHistogram fanoutNanos = new LatencyHistogram();    // Tiempo de encolar un mensaje en toda la sala
+    final LatencyHistogram handshakeNanos = new LatencyHistogram(); // Desde accept hasta el registro del nombre
+
+    ServerMetrics(ChatServerCore core) {
+        this.core = core;
+        for (int i = 0; i < overflows.length; i++) {
+            overflows[i] = new LongAdder();
+        }
+    }
+
+    @Override
+    public int getActiveConnections() {
+        return core.getActiveConnections();
+    }
+
+    @Override
+    public long getAcceptedConnections() {
+        return accepted.sum();
+    }
+
+    @Override
+    public long getRejectedConnections() {
+        return rejected.sum();
+    }
+
+    // Conexiones aceptadas en el último segundo completo
+    @Override
+    public double getAcceptsPerSecond() {
+        return acceptRate.lastSecond();
+    }
+
+    @Override
+    public long getMessagesIn() {
+        return messagesIn.sum();
+    }
+
+    @Override
+    public long getMessagesOut() {
+        return messagesOut.sum();
+    }
+
+    @Override
+    public long getBytesIn() {
+        return bytesIn.sum();
+    }
+
+    @Override
+    public long getBytesOut() {
+        return bytesOut.sum();
+    }
+
+    @Override
+    public long getSocketWrites() {
+        return socketWrites.sum();
+    }
+
+    @Override
+    public long getBroadcasts() {
+        return broadcasts.sum();
+    }
+
+    @Override
+    public double getFanoutP50Micros() {
+        return fanoutNanos.valueAtPercentile(50) / 1000.0;
+    }
+
+    @Override
+    public double getFanoutP99Micros() {
+        return fanoutNanos.valueAtPercentile(99) / 1000.0;
+    }
+
+    @Override
+    public double getFanoutMaxMicros() {
+        return fanoutNanos.getMax() / 1000.0;
+    }
+
+    @Override
+    public int getOutboundQueueDepthMax() {
+        int max = 0;
+        for (ClientConnection connection : core.connections()) {
+            max = Math.max(max, connection.pendingFrames());
+        }
+        return max;
+    }
+
+    @Override
+    public long getOutboundQueueDepthTotal() {
+        long total = 0;
+        for (ClientConnection connection : core.connections()) {
+            total += connection.pendingFrames();
+        }
+        return total;
+    }
+
+    @Override
+    public long getSlowConsumerDisconnects() {
+        return slowConsumerDisconnects.sum();
+    }
+
+    @Override
+    public long getClientRateLimited() {
+        return clientRateLimited.sum();
+    }
+
+    @Override
+    public long getGlobalRateLimited() {
+        return globalRateLimited.sum();
+    }
+
+    @Override
+    public long getLinesTooLong() {
+        return linesTooLong.sum();
+    }
+
+    @Override
+    public long getDroppedFrames() {
+        return overflows[ServerConfig.OverflowPolicy.DROP_OLDEST.ordinal()].sum()
+                + overflows[ServerConfig.OverflowPolicy.DROP_NEWEST.ordinal()].sum();
+    }
+
+    @Override
+    public long getHandshakeTimeouts() {
+        return handshakeTimeouts.sum();
+    }
+
+    @Override
+    public long getTlsHandshakes() {
+        return tlsHandshakes.sum();
+    }
+
+    @Override
+    public long getTlsHandshakeFailures() {
+        return tlsHandshakeFailures.sum();
+    }
+
+    @Override
+    public long getCompressedFrames() {
+        return compressedFrames.sum();
+    }
+
+    @Override
+    public long getCompressionBytesIn() {
+        return compressionBytesIn.sum();
+    }
+
+    @Override
+    public long getCompressionBytesOut() {
+        return compressionBytesOut.sum();
+    }
+
+    @Override
+    public long getCompressionSavedBytes() {
+        return compressionSavedBytes.sum();
+    }
+
+    @Override
+    public long getCompressionCpuMicros() {
+        return compressionNanos.sum() / 1000;
+    }
+
+    @Override
+    public double getHandshakeP50Micros() {
+        return handshakeNanos.valueAtPercentile(50) / 1000.0;
+    }
+
+    @Override
+    public double getHandshakeP99Micros() {
+        return handshakeNanos.valueAtPercentile(99) / 1000.0;
+    }
+
+    @Override
+    public long getClusterMessagesOut() {
+        return clusterOut.sum();
+    }
+
+    @Override
+    public long getClusterMessagesIn() {
+        return clusterIn.sum();
+    }
+
+    @Override
+    public long getClusterDuplicates() {
+        return clusterDuplicates.sum();
+    }
+
+    @Override
+    public long getClusterDropped() {
+        return clusterDropped.sum();
+    }
+
+    @Override
+    public void resetHistograms() {
+        fanoutNanos.reset();
+        handshakeNanos.reset();
+    }
+
+    // Formato de exposición de texto de Prometheus
+    public String toText() {
+        StringBuilder text = new StringBuilder(2048);
+        gauge(text, "chat_active_connections", "Conexiones abiertas", getActiveConnections());
+        counter(text, "chat_accepted_connections_total", "Conexiones aceptadas", getAcceptedConnections());
+        counter(text, "chat_rejected_connections_total", "Conexiones rechazadas por el límite", getRejectedConnections());
+        gauge(text, "chat_accepts_per_second", "Conexiones aceptadas por segundo", getAcceptsPerSecond());
+        counter(text, "chat_messages_in_total", "Mensajes recibidos", getMessagesIn());
+        counter(text, "chat_messages_out_total", "Tramas enviadas", getMessagesOut());
+        counter(text, "chat_bytes_in_total", "Bytes recibidos", getBytesIn());
+        counter(text, "chat_bytes_out_total", "Bytes enviados", getBytesOut());
+        counter(text, "chat_socket_writes_total", "Llamadas a write() en sockets de clientes", getSocketWrites());
+        summary(text, "chat_broadcast_fanout_microseconds", "Tiempo de encolar un broadcast en todos los destinatarios", fanoutNanos);
+        gauge(text, "chat_outbound_queue_depth_max", "Tramas pendientes en la cola de salida más llena", getOutboundQueueDepthMax());
+        gauge(text, "chat_outbound_queue_depth_total", "Tramas pendientes en todas las colas de salida", getOutboundQueueDepthTotal());
+        counter(text, "chat_slow_consumer_disconnects_total", "Clientes desconectados por no consumir sus mensajes", getSlowConsumerDisconnects());
+        counter(text, "chat_client_rate_limited_total", "Mensajes retenidos por el límite de su cliente", getClientRateLimited());
+        counter(text, "chat_global_rate_limited_total", "Mensajes retenidos por el límite global", getGlobalRateLimited());
+        counter(text, "chat_lines_too_long_total", "Líneas descartadas por superar maxLineLength", getLinesTooLong());
+        counter(text, "chat_dropped_frames_total", "Tramas descartadas por colas de salida llenas", getDroppedFrames());
+        summary(text, "chat_handshake_microseconds", "Tiempo desde accept hasta registrar el nombre", handshakeNanos);
+        counter(text, "chat_handshake_timeouts_total", "Conexiones cerradas por no enviar el nombre a tiempo", getHandshakeTimeouts());
+        counter(text, "chat_tls_handshakes_total", "Handshakes TLS completados", getTlsHandshakes());
+        counter(text, "chat_tls_handshake_failures_total", "Conexiones que fallaron en el handshake TLS", getTlsHandshakeFailures());
+        counter(text, "chat_compressed_frames_total", "Tramas comprimidas generadas", getCompressedFrames());
+        counter(text, "chat_compression_input_bytes_total", "Bytes antes de comprimir", getCompressionBytesIn());
+        counter(text, "chat_compression_output_bytes_total", "Bytes después de comprimir", getCompressionBytesOut());
+        counter(text, "chat_compression_saved_bytes_total", "Bytes ahorrados por la compresión en todos los destinatarios", getCompressionSavedBytes());
+        counter(text, "chat_compression_cpu_microseconds_total", "Tiempo de CPU dedicado a comprimir", getCompressionCpuMicros());
+        counter(text, "chat_cluster_messages_out_total", "Mensajes reenviados a otros nodos", getClusterMessagesOut());
+        counter(text, "chat_cluster_messages_in_total", "Mensajes de otros nodos entregados", getClusterMessagesIn());
+        counter(text, "chat_cluster_duplicates_total", "Mensajes de otros nodos descartados por repetidos", getClusterDuplicates());
+        counter(text, "chat_cluster_dropped_total", "Mensajes no reenviados por una cola de nodo llena", getClusterDropped());
+        return text.toString();
+    }
+
+    private static void counter(StringBuilder text, String name, String help, long value) {
+        header(text, name, help, "counter");
+        text.append(name).append(' ').append(value).append('\n');
+    }
+
+    private static void gauge(StringBuilder text, String name, String help, double value) {
+        header(text, name, help, "gauge");
+        text.append(name).append(' ').append(value).append('\n');
+    }
+
+    private static void summary(StringBuilder text, String name, String help, LatencyHistogram histogram) {
+        header(text, name, help, "summary");
+        for (double quantile : new double[]{0.5, 0.9, 0.99, 0.999}) {
+            text.append(name).append("{quantile=\"").append(quantile).append("\"} ")
+                    .append(histogram.valueAtPercentile(quantile * 100) / 1000.0).append('\n');
+        }
+        text.append(name).append("_sum ").append(histogram.getSum() / 1000.0).append('\n');
+        text.append(name).append("_count ").append(histogram.getCount()).append('\n');
+    }
+
+    private static void header(StringBuilder text, String name, String help, String type) {
+        text.append("# HELP ").append(name).append(' ').append(help).append('\n');
+        text.append("# TYPE ").append(name).append(' ').append(type).append('\n');
+    }
+}
@@ -0,0 +1,76 @@
+package org.example.Servidor;
+
+// Interfaz JMX de las métricas del servidor (visible en jconsole bajo org.example.Servidor)
+public interface ServerMetricsMBean {
+
+    int getActiveConnections();
+
+    long getAcceptedConnections();
+
+    long getRejectedConnections();
+
+    double getAcceptsPerSecond();
+
+    long getMessagesIn();
+
+    long getMessagesOut();
+
+    long getBytesIn();
+
+    long getBytesOut();
+
+    long getSocketWrites();
+
+    long getBroadcasts();
+
+    double getFanoutP50Micros();
+
+    double getFanoutP99Micros();
+
+    double getFanoutMaxMicros();
+
+    int getOutboundQueueDepthMax();
+
+    long getOutboundQueueDepthTotal();
+
+    long getSlowConsumerDisconnects();
+
+    long getClientRateLimited();
+
+    long getGlobalRateLimited();
+
+    long getLinesTooLong();
+
+    long getDroppedFrames();
+
+    long getHandshakeTimeouts();
+
+    long getTlsHandshakes();
+
+    long getTlsHandshakeFailures();
+
+    long getCompressedFrames();
+
+    long getCompressionBytesIn();
+
+    long getCompressionBytesOut();
+
+    long getCompressionSavedBytes();
+
+    long getCompressionCpuMicros();
+
+    double getHandshakeP50Micros();
+
+    double getHandshakeP99Micros();
+
+    long getClusterMessagesOut();
+
+    long getClusterMessagesIn();
+
+    long getClusterDuplicates();
+
+    long getClusterDropped();
+
+    // Vacía los histogramas de fan-out y saludo
+    void resetHistograms();
+}
@@ -0,0 +1,150 @@
+package org.example.Servidor;
+
+import java.security.SecureRandom;
+import java.util.Base64;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+
+// Sesiones reanudables. Al registrarse con "@hello", el cliente recibe un token en la respuesta
+// ("@hello proto=... session=<token>"). Si la conexión se cae, el aviso de salida se aplaza
+// graceMillis: un cliente que vuelve con "session=<token>" dentro de ese plazo recupera su
+// nombre, color, id de remitente y sala sin que el resto vea una salida y una entrada.
+// Las sesiones viven en memoria: tras reiniciar el servidor los tokens antiguos no valen.
+final class SessionRegistry {
+
+    private static final SecureRandom RANDOM = new SecureRandom();
+
+    static final class Session {
+        final String token;
+        final int senderId;
+        final String name;
+        final String colorHex;
+        private final ReentrantLock lock = new ReentrantLock();
+        volatile String roomName = RoomRegistry.DEFAULT_ROOM; // Sala actual, para volver a ella al reanudar
+        private ClientConnection connection; // Conexión que usa ahora la sesión; null mientras está desconectada
+        private ScheduledFuture<?> pendingLeave;
+
+        private Session(String token, ChatServerCore.ClientInfo info, ClientConnection connection) {
+            this.token = token;
+            this.senderId = info.id;
+            this.name = info.name;
+            this.colorHex = info.colorHex;
+            this.connection = connection;
+        }
+    }
+
+    private final long graceMillis;
+    private final ConcurrentHashMap<String, Session> sessions = new ConcurrentHashMap<>();
+    private volatile ScheduledThreadPoolExecutor timer; // null con el servidor parado
+
+    SessionRegistry(long graceMillis) {
+        this.graceMillis = graceMillis;
+    }
+
+    // Al arrancar el servidor, también tras una parada (la GUI reutiliza el mismo ChatServerCore)
+    void start() {
+        ScheduledThreadPoolExecutor expiry = new ScheduledThreadPoolExecutor(1, task -> {
+            Thread thread = new Thread(task, "chat-session-expiry");
+            thread.setDaemon(true);
+            return thread;
+        });
+        expiry.setRemoveOnCancelPolicy(true);
+        timer = expiry;
+    }
+
+    boolean isEnabled() {
+        return graceMillis > 0;
+    }
+
+    // Crea la sesión de un cliente recién registrado
+    Session open(ChatServerCore.ClientInfo info, ClientConnection connection) {
+        byte[] bytes = new byte[16];
+        RANDOM.nextBytes(bytes);
+        Session session = new Session(Base64.getUrlEncoder().withoutPadding().encodeToString(bytes), info, connection);
+        sessions.put(session.token, session);
+        return session;
+    }
+
+    // Pasa la sesión a una conexión nueva. Devuelve null si el token no existe o su salida ya se anunció.
+    // Si la conexión anterior sigue abierta (el servidor aún no detectó la caída) se cierra sin aviso.
+    Session resume(String token, ClientConnection connection) {
+        Session session = sessions.get(token);
+        if (session == null) {
+            return null;
+        }
+        ClientConnection previous;
+        session.lock.lock();
+        try {
+            if (session.pendingLeave != null && !session.pendingLeave.cancel(false)) {
+                return null; // El aviso de salida ya está en marcha
+            }
+            session.pendingLeave = null;
+            previous = session.connection;
+            session.connection = connection;
+        } finally {
+            session.lock.unlock();
+        }
+        if (previous != null && previous != connection) {
+            previous.close();
+        }
+        return session;
+    }
+
+    // La conexión de la sesión se cerró sin /quit: leave se ejecuta al acabar el plazo si nadie la reanuda.
+    // No hace nada si la sesión ya pasó a otra conexión.
+    void detach(Session session, ClientConnection connection, Runnable leave) {
+        session.lock.lock();
+        try {
+            if (session.connection != connection) {
+                return;
+            }
+            session.connection = null;
+            ScheduledThreadPoolExecutor expiry = timer;
+            try {
+                if (expiry != null) {
+                    session.pendingLeave = expiry.schedule(() -> {
+                        if (sessions.remove(session.token, session)) {
+                            leave.run();
+                        }
+                    }, graceMillis, TimeUnit.MILLISECONDS);
+                    return;
+                }
+            } catch (RejectedExecutionException e) {
+                // El servidor se está deteniendo: avisar ya
+            }
+        } finally {
+            session.lock.unlock();
+        }
+        sessions.remove(session.token, session);
+        leave.run();
+    }
+
+    // Cierra la sesión al salir con /quit; devuelve false si ya había pasado a otra conexión
+    boolean close(Session session, ClientConnection connection) {
+        session.lock.lock();
+        try {
+            if (session.connection != connection) {
+                return false;
+            }
+            session.connection = null;
+        } finally {
+            session.lock.unlock();
+        }
+        sessions.remove(session.token, session);
+        return true;
+    }
+
+    // Descarta las sesiones y los avisos aplazados (al detener el servidor)
+    void shutdown() {
+        ScheduledThreadPoolExecutor expiry = timer;
+        if (expiry != null) {
+            expiry.shutdownNow();
+            timer = null;
+        }
+        sessions.clear();
+    }
+}
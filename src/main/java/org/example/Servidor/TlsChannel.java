@@ -0,0 +1,300 @@
+package org.example.Servidor;
+
+import javax.net.ssl.SSLEngine;
+import javax.net.ssl.SSLEngineResult;
+import javax.net.ssl.SSLException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ByteChannel;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.GatheringByteChannel;
+import java.nio.channels.SocketChannel;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.locks.ReentrantLock;
+
+// Canal TLS sobre un SocketChannel con SSLEngine. read() y write() trabajan con datos en claro y
+// sirven tanto para canales bloqueantes (un hilo lee y otro escribe, como en ClientHandler) como
+// no bloqueantes (el bucle NIO; ahí devuelven 0 cuando hay que esperar al socket).
+// El handshake lo lleva adelante la lectura: en modo bloqueante write() espera a que termine;
+// en modo no bloqueante devuelve 0 y el bucle vuelve a escribir cuando isHandshaking() es false.
+final class TlsChannel implements ByteChannel, GatheringByteChannel {
+
+    private static final ByteBuffer[] NO_DATA = {ByteBuffer.allocate(0)};
+
+    private final SocketChannel channel;
+    private final SSLEngine engine;
+    private final ServerMetrics metrics;
+    private final boolean blocking;
+    private final ReentrantLock readLock = new ReentrantLock();
+    private final ReentrantLock writeLock = new ReentrantLock();
+    private final CountDownLatch handshakeDone = new CountDownLatch(1);
+    private ByteBuffer netIn;  // Datos cifrados recibidos sin descifrar (modo escritura)
+    private ByteBuffer appIn;  // Datos descifrados que aún no se han entregado (modo lectura)
+    private ByteBuffer netOut; // Datos cifrados pendientes de escribir en el socket (modo lectura)
+    private volatile boolean handshaking = true;
+
+    TlsChannel(SocketChannel channel, SSLEngine engine, ServerMetrics metrics) throws IOException {
+        this.channel = channel;
+        this.engine = engine;
+        this.metrics = metrics;
+        this.blocking = channel.isBlocking();
+        int packetSize = engine.getSession().getPacketBufferSize();
+        this.netIn = ByteBuffer.allocate(packetSize);
+        this.appIn = ByteBuffer.allocate(engine.getSession().getApplicationBufferSize()).flip();
+        this.netOut = ByteBuffer.allocate(packetSize).flip();
+        engine.beginHandshake();
+    }
+
+    boolean isHandshaking() {
+        return handshaking;
+    }
+
+    // Quedan datos descifrados o cifrados sin procesar: read() puede devolver algo sin leer del socket
+    boolean hasBufferedInput() {
+        readLock.lock();
+        try {
+            return appIn.hasRemaining() || netIn.position() > 0;
+        } finally {
+            readLock.unlock();
+        }
+    }
+
+    // Quedan datos cifrados por escribir en el socket (solo en modo no bloqueante)
+    boolean hasPendingOutput() {
+        writeLock.lock();
+        try {
+            return netOut.hasRemaining();
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    @Override
+    public int read(ByteBuffer dst) throws IOException {
+        readLock.lock();
+        try {
+            while (!appIn.hasRemaining()) {
+                int progress = unwrapNext();
+                if (progress <= 0) {
+                    return progress;
+                }
+            }
+            int count = Math.min(appIn.remaining(), dst.remaining());
+            dst.put(dst.position(), appIn, appIn.position(), count);
+            dst.position(dst.position() + count);
+            appIn.position(appIn.position() + count);
+            return count;
+        } finally {
+            readLock.unlock();
+        }
+    }
+
+    // Descifra un registro de netIn, leyendo del socket si no hay uno completo. Devuelve 1 si avanzó,
+    // 0 si el socket no tiene datos (solo en modo no bloqueante) y -1 si la conexión se cerró
+    private int unwrapNext() throws IOException {
+        SSLEngineResult result;
+        netIn.flip();
+        appIn.compact();
+        try {
+            result = engine.unwrap(netIn, appIn);
+        } catch (SSLException e) {
+            countFailure();
+            throw e;
+        } finally {
+            netIn.compact();
+            appIn.flip();
+        }
+        switch (result.getStatus()) {
+            case BUFFER_UNDERFLOW -> {
+                if (!netIn.hasRemaining()) {
+                    netIn = enlarge(netIn, engine.getSession().getPacketBufferSize());
+                }
+                int read = channel.read(netIn);
+                if (read < 0) {
+                    return -1; // Sin close_notify; el motor no tiene nada más que entregar
+                }
+                return read > 0 ? 1 : 0;
+            }
+            case BUFFER_OVERFLOW -> {
+                appIn = enlarge(appIn.compact(), engine.getSession().getApplicationBufferSize()).flip();
+                return 1;
+            }
+            case CLOSED -> {
+                return -1;
+            }
+            default -> {
+                advanceHandshake(result.getHandshakeStatus());
+                return 1;
+            }
+        }
+    }
+
+    // Ejecuta las tareas y envía los mensajes de handshake pendientes hasta que haga falta leer
+    private void advanceHandshake(SSLEngineResult.HandshakeStatus status) throws IOException {
+        while (true) {
+            switch (status) {
+                case NEED_TASK -> {
+                    Runnable task;
+                    while ((task = engine.getDelegatedTask()) != null) {
+                        task.run();
+                    }
+                    status = engine.getHandshakeStatus();
+                }
+                case NEED_WRAP -> {
+                    writeLock.lock();
+                    try {
+                        status = wrap(NO_DATA, 0, 1).getHandshakeStatus();
+                        flush();
+                    } finally {
+                        writeLock.unlock();
+                    }
+                }
+                case FINISHED, NOT_HANDSHAKING -> {
+                    if (handshaking) {
+                        handshaking = false;
+                        metrics.tlsHandshakes.increment();
+                        handshakeDone.countDown();
+                    }
+                    return;
+                }
+                default -> {
+                    return; // NEED_UNWRAP: hay que esperar datos del cliente
+                }
+            }
+        }
+    }
+
+    @Override
+    public int write(ByteBuffer src) throws IOException {
+        return (int) write(new ByteBuffer[]{src}, 0, 1);
+    }
+
+    @Override
+    public long write(ByteBuffer[] srcs) throws IOException {
+        return write(srcs, 0, srcs.length);
+    }
+
+    // Cifra lo que quepa de srcs y lo escribe; devuelve los bytes en claro consumidos.
+    // En modo no bloqueante devuelve 0 mientras dura el handshake o si el socket no admite más
+    @Override
+    public long write(ByteBuffer[] srcs, int offset, int length) throws IOException {
+        if (handshaking) {
+            if (!blocking) {
+                return 0;
+            }
+            try {
+                handshakeDone.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new ClosedChannelException();
+            }
+            if (!channel.isOpen()) {
+                throw new ClosedChannelException();
+            }
+        }
+        writeLock.lock();
+        try {
+            if (!flush()) {
+                return 0;
+            }
+            long consumed = 0;
+            while (hasRemaining(srcs, offset, length)) {
+                SSLEngineResult result = wrap(srcs, offset, length);
+                if (result.getStatus() == SSLEngineResult.Status.CLOSED) {
+                    throw new ClosedChannelException();
+                }
+                consumed += result.bytesConsumed();
+                if (!flush()) {
+                    break; // Lo cifrado queda en netOut hasta el próximo OP_WRITE
+                }
+            }
+            return consumed;
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    // Añade a netOut un registro cifrado con datos de srcs. Solo con writeLock
+    private SSLEngineResult wrap(ByteBuffer[] srcs, int offset, int length) throws IOException {
+        while (true) {
+            SSLEngineResult result;
+            netOut.compact();
+            try {
+                result = engine.wrap(srcs, offset, length, netOut);
+            } catch (SSLException e) {
+                countFailure();
+                throw e;
+            } finally {
+                netOut.flip();
+            }
+            if (result.getStatus() != SSLEngineResult.Status.BUFFER_OVERFLOW) {
+                return result;
+            }
+            netOut = enlarge(netOut.compact(), engine.getSession().getPacketBufferSize()).flip();
+        }
+    }
+
+    // Escribe netOut en el socket; devuelve true si se vació. En modo bloqueante siempre lo vacía
+    boolean flush() throws IOException {
+        writeLock.lock();
+        try {
+            while (netOut.hasRemaining()) {
+                if (channel.write(netOut) == 0 && !blocking) {
+                    return false;
+                }
+            }
+            return true;
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    @Override
+    public boolean isOpen() {
+        return channel.isOpen();
+    }
+
+    // Envía close_notify si el socket lo admite sin esperar y cierra el canal
+    @Override
+    public void close() throws IOException {
+        try {
+            if (!handshaking && channel.isOpen() && writeLock.tryLock()) {
+                try {
+                    engine.closeOutbound();
+                    wrap(NO_DATA, 0, 1);
+                    if (!blocking) {
+                        channel.write(netOut);
+                    }
+                } catch (IOException e) {
+                    // El otro extremo ya no está; cerrar igualmente
+                } finally {
+                    writeLock.unlock();
+                }
+            }
+        } finally {
+            channel.close();
+            handshakeDone.countDown(); // Despierta a un escritor que esperaba el handshake
+        }
+    }
+
+    private void countFailure() {
+        if (handshaking) {
+            metrics.tlsHandshakeFailures.increment();
+        }
+    }
+
+    private static boolean hasRemaining(ByteBuffer[] buffers, int offset, int length) {
+        for (int i = offset; i < offset + length; i++) {
+            if (buffers[i].hasRemaining()) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    // Copia buffer (en modo escritura) en uno con al menos minCapacity bytes libres más
+    private static ByteBuffer enlarge(ByteBuffer buffer, int minCapacity) {
+        ByteBuffer larger = ByteBuffer.allocate(buffer.position() + Math.max(minCapacity, buffer.capacity()));
+        return larger.put(buffer.flip());
+    }
+}
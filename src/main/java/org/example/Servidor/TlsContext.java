@@ -0,0 +1,55 @@
+package org.example.Servidor;
+
+import javax.net.ssl.KeyManagerFactory;
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.SSLEngine;
+import javax.net.ssl.SSLParameters;
+import javax.net.ssl.SSLSessionContext;
+import java.io.File;
+import java.io.IOException;
+import java.security.GeneralSecurityException;
+import java.security.KeyStore;
+
+// Contexto TLS del servidor, a partir del almacén de claves de tlsKeyStore (PKCS12 o JKS).
+// Para pruebas basta un certificado autofirmado:
+//   keytool -genkeypair -alias chat -keyalg EC -groupname secp256r1 -validity 365 -dname CN=localhost
+//           -ext san=dns:localhost,ip:127.0.0.1 -storetype PKCS12 -keystore chat.p12 -storepass cambiame
+//   keytool -exportcert -alias chat -keystore chat.p12 -storepass cambiame -file chat.cer
+//   keytool -importcert -noprompt -alias chat -file chat.cer -keystore confianza.p12 -storepass cambiame
+// y arrancar el cliente con -Dchat.client.tls=true -Dchat.client.trustStore=confianza.p12.
+// Las sesiones se pueden reanudar (tickets de TLS 1.3 o caché de sesiones de TLS 1.2) durante
+// tlsSessionTimeoutSeconds: tras reiniciar un nodo, los clientes que reconectan a la vez no pagan
+// cada uno un handshake completo con firma del certificado.
+final class TlsContext {
+
+    private static final String[] PROTOCOLS = {"TLSv1.3", "TLSv1.2"};
+
+    private final SSLContext context;
+
+    private TlsContext(SSLContext context) {
+        this.context = context;
+    }
+
+    static TlsContext load(ServerConfig config) throws IOException, GeneralSecurityException {
+        char[] password = config.getTlsKeyStorePassword() != null ? config.getTlsKeyStorePassword().toCharArray() : null;
+        KeyStore keyStore = KeyStore.getInstance(new File(config.getTlsKeyStore()), password); // Detecta PKCS12 o JKS
+        KeyManagerFactory keyManagers = KeyManagerFactory.getInstance(KeyManagerFactory.getDefaultAlgorithm());
+        keyManagers.init(keyStore, password);
+        SSLContext context = SSLContext.getInstance("TLS");
+        context.init(keyManagers.getKeyManagers(), null, null);
+        SSLSessionContext sessions = context.getServerSessionContext();
+        sessions.setSessionCacheSize(config.getTlsSessionCacheSize());
+        sessions.setSessionTimeout(config.getTlsSessionTimeoutSeconds());
+        return new TlsContext(context);
+    }
+
+    // Motor para una conexión aceptada
+    SSLEngine newEngine() {
+        SSLEngine engine = context.createSSLEngine();
+        engine.setUseClientMode(false);
+        SSLParameters parameters = engine.getSSLParameters();
+        parameters.setProtocols(PROTOCOLS);
+        engine.setSSLParameters(parameters);
+        return engine;
+    }
+}